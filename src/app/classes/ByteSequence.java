@@ -0,0 +1,114 @@
+package app.classes;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Класс последовательности символов поверх байтов UTF-8
+ * 
+ * Лексическая грамматика состоит только из символов ASCII, поэтому лексер
+ * читает байты напрямую, как символы (байты не-ASCII дают символы 128-255 и
+ * встречаются только внутри строк и комментариев). В строки UTF-8
+ * декодируется только содержимое токенов ({@link #subSequence(int, int)}),
+ * так что отображенный в память файл ({@link java.nio.MappedByteBuffer})
+ * целиком не декодируется и не копируется.
+ */
+public class ByteSequence implements CharSequence {
+    // Свойства
+    private ByteBuffer bytes;
+
+    /**
+     * Конструктор
+     * 
+     * @param bytes байты UTF-8 (с начала буфера до его предела)
+     */
+    public ByteSequence(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xFF);
+    }
+
+    /**
+     * Декодировать часть байтов
+     * 
+     * @param start начало (байт)
+     * @param end   конец (байт)
+     * @return строка
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        final byte[] part = new byte[end - start];
+        bytes.get(start, part);
+        return new String(part, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Получить часть байтов без декодирования и копирования
+     * 
+     * @param start начало (байт)
+     * @param end   конец (байт)
+     * @return последовательность над частью байтов
+     */
+    public ByteSequence slice(int start, int end) {
+        return new ByteSequence(bytes.slice(start, end - start));
+    }
+
+    /**
+     * Получить начало символа UTF-8, которому принадлежит байт
+     * 
+     * @param index номер байта
+     * @return номер первого байта символа
+     */
+    public int charStart(int index) {
+        for (int i = 0; i < 3 && index > 0 && index < length() && (bytes.get(index) & 0xC0) == 0x80; i++)
+            index--;
+        return index;
+    }
+
+    /**
+     * Декодировать символ, который начинается с байта (для сообщений об ошибках)
+     * 
+     * @param index номер первого байта символа
+     * @return первый символ UTF-16 декодированного символа
+     */
+    public char decodeAt(int index) {
+        final int lead = bytes.get(index) & 0xFF;
+        final int size = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+        return subSequence(index, Math.min(index + size, length())).charAt(0);
+    }
+
+    /**
+     * Количество символов UTF-16 в части байтов (позиции в строке считаются
+     * так же, как при разборе декодированного текста)
+     * 
+     * @param start начало (байт)
+     * @param end   конец (байт)
+     * @return количество символов
+     */
+    public int columns(int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            final int b = bytes.get(i) & 0xFF;
+            // Продолжения последовательностей не считаются, символы вне
+            // базовой плоскости занимают два символа (суррогатная пара)
+            if ((b & 0xC0) != 0x80)
+                result++;
+            if ((b & 0xF8) == 0xF0)
+                result++;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+package app.classes;
+
+/**
+ * Класс контекста компиляции
+ *
+ * Хранит все изменяемое состояние одной компиляции: счетчики имен выражений,
+ * операторов и функций, счетчик меток и промежуточный код. Компиляции с
+ * разными контекстами могут выполняться параллельно.
+ */
+public class Compilation {
+    // Свойства
+    private Parser.Mode mode;
+    private IntermediateCode iCode;
+    // Поля
+    private int expressionCounter;
+    private int statementCounter;
+    private int functionCounter;
+    private int labelCounter;
+
+    /**
+     * Конструктор (режим вычисления, код накапливается в памяти)
+     */
+    public Compilation() {
+        this(Parser.Mode.EVALUATE, new IntermediateCode());
+    }
+
+    /**
+     * Конструктор
+     *
+     * @param mode  режим разбора
+     * @param iCode приемник промежуточного кода
+     */
+    public Compilation(Parser.Mode mode, IntermediateCode iCode) {
+        this.mode = mode;
+        this.iCode = iCode;
+    }
+
+    /**
+     * Получить режим разбора
+     *
+     * @return режим разбора
+     */
+    public Parser.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Получить промежуточный код
+     *
+     * @return промежуточный код
+     */
+    public IntermediateCode getIntermediateCode() {
+        return iCode;
+    }
+
+    /**
+     * Получить номер следующего выражения
+     *
+     * @return номер выражения
+     */
+    public int nextExpression() {
+        return expressionCounter++;
+    }
+
+    /**
+     * Получить номер следующего оператора
+     *
+     * @return номер оператора
+     */
+    public int nextStatement() {
+        return statementCounter++;
+    }
+
+    /**
+     * Получить номер следующей функции
+     *
+     * @return номер функции
+     */
+    public int nextFunction() {
+        return functionCounter++;
+    }
+
+    /**
+     * Получить текущую метку
+     *
+     * @return метка
+     */
+    public int getLabel() {
+        return labelCounter;
+    }
+
+    /**
+     * Зарезервировать метки
+     *
+     * @param count количество меток
+     * @return первая зарезервированная метка
+     */
+    public int reserveLabels(int count) {
+        int label = labelCounter;
+        labelCounter += count;
+        return label;
+    }
+
+    /**
+     * Сброс счетчиков и промежуточного кода
+     */
+    public void reset() {
+        expressionCounter = 0;
+        statementCounter = 0;
+        functionCounter = 0;
+        labelCounter = 0;
+        iCode.resetICode();
+    }
+}
@@ -0,0 +1,206 @@
+package app.classes;
+
+/**
+ * Класс записи об ошибке
+ * 
+ * Хранит вид ошибки, шаблон сообщения с аргументами, строку и позицию, номер
+ * токена и ссылку на исходный текст. Текст сообщения и фрагмент исходного
+ * текста строятся только при чтении, так что ошибка, которую перехватывают и
+ * не печатают, ничего не форматирует.
+ */
+public class Diagnostic {
+    /**
+     * Перечисление видов ошибок
+     */
+    public static enum Kind {
+        LEXICAL, SYNTAX, SEMANTIC
+    }
+    // Свойства
+    private static final int EXCERPT = 40;
+    private Diagnostic.Kind kind;
+    private String format;
+    private Object[] args;
+    private int line;
+    private int pos;
+    // Поля
+    private int token = -1;
+    private TokenStream tokens;
+    private CharSequence source;
+    private int offset = -1;
+    // Переменные
+    private String message;
+    private String excerpt;
+
+    /**
+     * Конструктор (ошибка без положения)
+     * 
+     * @param kind   вид ошибки
+     * @param format шаблон сообщения ({@link String#format(String, Object...)})
+     * @param args   аргументы шаблона (исключения подставляются своим
+     *               сообщением)
+     */
+    public Diagnostic(Diagnostic.Kind kind, String format, Object... args) {
+        this(kind, -1, -1, format, args);
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param kind   вид ошибки
+     * @param line   строка (-1, если положение неизвестно)
+     * @param pos    позиция в строке
+     * @param format шаблон сообщения ({@link String#format(String, Object...)})
+     * @param args   аргументы шаблона (исключения подставляются своим
+     *               сообщением)
+     */
+    public Diagnostic(Diagnostic.Kind kind, int line, int pos, String format, Object... args) {
+        this.kind = kind;
+        this.line = line;
+        this.pos = pos;
+        this.format = format;
+        this.args = args;
+    }
+
+    /**
+     * Задать токен ошибки (исходный текст берется из последовательности
+     * токенов при построении фрагмента)
+     * 
+     * @param tokens последовательность токенов
+     * @param token  номер токена
+     */
+    public void setToken(TokenStream tokens, int token) {
+        this.tokens = tokens;
+        this.token = token;
+    }
+
+    /**
+     * Задать место ошибки в исходном тексте
+     * 
+     * @param source исходный текст
+     * @param offset позиция в тексте
+     */
+    public void setSource(CharSequence source, int offset) {
+        this.source = source;
+        this.offset = offset;
+    }
+
+    /**
+     * Получить вид ошибки
+     * 
+     * @return вид ошибки
+     */
+    public Diagnostic.Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Получить строку ошибки
+     * 
+     * @return номер строки или -1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Получить позицию ошибки в строке
+     * 
+     * @return позиция или -1
+     */
+    public int getPos() {
+        return pos;
+    }
+
+    /**
+     * Получить номер токена ошибки
+     * 
+     * @return номер токена или -1
+     */
+    public int getToken() {
+        return token;
+    }
+
+    /**
+     * Получить сообщение
+     * 
+     * @return сообщение с положением ошибки
+     */
+    public String getMessage() {
+        if (message == null) {
+            final Object[] values = args.clone();
+            for (int i = 0; i < values.length; i++)
+                if (values[i] instanceof Throwable)
+                    values[i] = ((Throwable) values[i]).getMessage();
+            message = String.format(format, values);
+            if (line >= 0)
+                message += ": string " + line + ", position " + pos;
+        }
+        return message;
+    }
+
+    /**
+     * Получить фрагмент исходного текста: строка ошибки (не больше 40 символов
+     * в каждую сторону) и указатель ^ под местом ошибки
+     * 
+     * @return фрагмент или null, если исходный текст неизвестен
+     */
+    public String getExcerpt() {
+        if (excerpt != null)
+            return excerpt;
+        if (source == null && tokens != null && token >= 0) {
+            source = tokens.getSource();
+            offset = tokens.getStart(token);
+        }
+        if (source == null || offset < 0 || offset > source.length())
+            return null;
+        try {
+            // Байтовый вход (UTF-8) просматривается на 4 байта на символ, затем
+            // границы сдвигаются к началам символов, а фрагмент обрезается до
+            // EXCERPT декодированных символов
+            final ByteSequence bytes = source instanceof ByteSequence ? (ByteSequence) source : null;
+            final int limit = bytes != null ? EXCERPT * 4 : EXCERPT;
+            int from = offset;
+            int to = offset;
+            while (from > 0 && offset - from < limit && !isLineEnd(source.charAt(from - 1)))
+                from--;
+            while (to < source.length() && to - offset < limit && !isLineEnd(source.charAt(to)))
+                to++;
+            if (bytes != null) {
+                from = bytes.charStart(from);
+                to = bytes.charStart(to);
+            }
+            // Текст берется через subSequence, чтобы байтовый вход декодировался
+            String before = source.subSequence(from, offset).toString();
+            String after = source.subSequence(offset, to).toString();
+            if (before.length() > EXCERPT)
+                before = before.substring(before.length() - EXCERPT);
+            if (after.length() > EXCERPT)
+                after = after.substring(0, EXCERPT);
+            final String text = before + after;
+            final int column = before.length();
+            final StringBuilder result = new StringBuilder(text.length() * 2 + 2);
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                result.append(c == '\t' || c == '\0' ? ' ' : c);
+            }
+            result.append('\n');
+            for (int i = 0; i < column; i++)
+                result.append(' ');
+            excerpt = result.append('^').toString();
+        } catch (IndexOutOfBoundsException ex) {
+            // Место ошибки уже вытеснено из окна потокового входа
+            return null;
+        }
+        return excerpt;
+    }
+
+    @Override
+    public String toString() {
+        final String text = getExcerpt();
+        return text == null ? getMessage() : getMessage() + '\n' + text;
+    }
+
+    private static boolean isLineEnd(char c) {
+        return c == '\n' || c == '\r';
+    }
+}
\ No newline at end of file
@@ -1,19 +1,54 @@
 package app.classes;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import app.classes.exceptions.SemanticException;
 
 public class Expression {
+    /**
+     * Перечисление видов выражения
+     */
+    public static enum Kind {
+        // Чтение переменной
+        VARIABLE,
+        // Константа (int, bool, string)
+        CONSTANT,
+        // Копия другого выражения (в том числе в скобках)
+        COPY,
+        // Одноместная операция
+        UNARY,
+        // Двуместная операция
+        BINARY
+    }
+    /**
+     * Перечисление статических типов выражения ({@link TypeChecker})
+     */
+    public static enum Type {
+        // Целое число
+        INT,
+        // Логическое значение
+        BOOL,
+        // Строка
+        STRING
+    }
     // Свойства
-    private String name;
+    private int id;
+    private Expression.Kind kind;
+    private String operation;
+    private String variable;
+    private int slot = -1;
+    private Expression left;
+    private Expression right;
     private Object result;
-    private String text;
-    private String iCode;
-    // Поля
-    private ArrayList<Expression> expressions;
-    // Статические поля
-    private static int counter = 0;
+    private boolean brackets;
+    private Expression.Type type;
 
     /**
      * Получить имя выражения
@@ -21,7 +56,7 @@ public class Expression {
      * @return имя выражения
      */
     public String getName() {
-        return name;
+        return "E" + id;
     }
 
     /**
@@ -39,112 +74,250 @@ public class Expression {
      * @return содержимое выражения
      */
     public String getText() {
-        return text;
+        switch (kind) {
+            case CONSTANT:
+                if (result instanceof String)
+                    return "\"" + result + "\"";
+                return result.toString();
+            case COPY:
+                if (brackets)
+                    return String.format("(%s) = %s", left.getName(), left.result);
+                return left.getText();
+            case UNARY:
+                return operation + left.getName() + " = " + result;
+            case BINARY:
+                return left.getName() + operation + right.getName() + " = " + left.result + operation + right.result
+                        + " = " + result;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Получить номер выражения (номер временной переменной $E)
+     * 
+     * @return номер выражения
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Получить вид выражения
+     * 
+     * @return вид выражения
+     */
+    public Expression.Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Получить операцию выражения
+     * 
+     * @return операция или null, если выражение не является операцией
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Получить имя читаемой переменной
+     * 
+     * @return имя переменной или null, если выражение не является чтением
+     *         переменной
+     */
+    public String getVariable() {
+        return variable;
+    }
+
+    /**
+     * Получить номер ячейки кадра читаемой переменной ({@link Scope})
+     * 
+     * @return номер ячейки или -1, если выражение не является чтением
+     *         переменной
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Получить статический тип выражения
+     * 
+     * @return тип или null, если проверка типов не выполнялась или тип не
+     *         определяется программой
+     */
+    public Expression.Type getType() {
+        return type;
     }
 
-    public ArrayList<Expression> getExpressions() {
-        return expressions;
+    /**
+     * Задать статический тип выражения
+     * 
+     * @param type тип
+     */
+    void setType(Expression.Type type) {
+        this.type = type;
     }
 
+    /**
+     * Получить левый (единственный) операнд
+     * 
+     * @return операнд или null
+     */
+    public Expression getLeft() {
+        return left;
+    }
+
+    /**
+     * Получить правый операнд
+     * 
+     * @return операнд или null
+     */
+    public Expression getRight() {
+        return right;
+    }
+
+    /**
+     * Получить вложенные выражения в порядке вычисления: обход в глубину, каждое
+     * выражение после своих операндов, общее выражение ({@link ExpressionTable})
+     * - один раз. Само выражение не входит в обход.
+     * 
+     * @return ленивый обход вложенных выражений
+     */
+    public Iterable<Expression> getExpressions() {
+        return postOrder(Arrays.asList(left, right));
+    }
+
+    /**
+     * Получить промежуточный код выражения
+     * 
+     * @return код выражения в формате строки
+     */
     public String getICode() {
-        return iCode;
+        switch (kind) {
+            case VARIABLE:
+                return "$" + getName() + "=" + variable;
+            case CONSTANT:
+                return "$" + getName() + "=" + result;
+            case COPY:
+                return "$" + getName() + "=" + left.getName();
+            case UNARY:
+                return "$" + getName() + "=" + operation + left.getName();
+            default:
+                return "$" + getName() + "=$" + left.getName() + operation + "$" + right.getName();
+        }
     }
 
     /**
      * Конструктор
+     * 
+     * @param compilation контекст компиляции
+     * @param var переменная
+     * @param bool признак чтения переменной
      */
-    public Expression(String var, Boolean bool) {
-        name = "E" + counter++;
+    public Expression(Compilation compilation, String var, Boolean bool) {
+        id = compilation.nextExpression();
+        kind = Expression.Kind.VARIABLE;
+        variable = var;
         result = null;
-        text = null;
-        expressions = new ArrayList<Expression>();
-        iCode = "$" + name + "=" + var;
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
+     * @param var         переменная
+     * @param slot        номер ячейки кадра переменной
+     */
+    public Expression(Compilation compilation, String var, int slot) {
+        this(compilation, var, true);
+        this.slot = slot;
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param compilation контекст компиляции
      * @param expr выражение из одного целого числа
      */
-    public Expression(Integer expr) {
-        name = "E" + counter++;
-        text = expr.toString();
+    public Expression(Compilation compilation, Integer expr) {
+        id = compilation.nextExpression();
+        kind = Expression.Kind.CONSTANT;
         result = expr;
-        expressions = new ArrayList<Expression>();
-        iCode = "$" + name + "=" + expr;
     }
 
     /**
      * Констуктор
      * 
+     * @param compilation контекст компиляции
      * @param expr выражение из одного логического значения
      */
-    public Expression(Boolean expr) {
-        name = "E" + counter++;
+    public Expression(Compilation compilation, Boolean expr) {
+        id = compilation.nextExpression();
+        kind = Expression.Kind.CONSTANT;
         result = expr;
-        text = expr.toString();
-        expressions = new ArrayList<Expression>();
-        iCode = "$" + name + "=" + expr;
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param expr выражение из одного строчного значения
      */
-    public Expression(String expr) {
-        name = "E" + counter++;
+    public Expression(Compilation compilation, String expr) {
+        id = compilation.nextExpression();
+        kind = Expression.Kind.CONSTANT;
         result = expr;
-        text = "\"" + expr + "\"";
-        expressions = new ArrayList<Expression>();
-        iCode = "$" + name + "=" + expr;
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param expr выражение
      * @throws SemanticException ошибка типа результата выражения
      */
-    public Expression(Expression expr) throws SemanticException {
-        name = String.format("%s", expr.name);
+    public Expression(Compilation compilation, Expression expr) throws SemanticException {
+        id = expr.id;
+        kind = Expression.Kind.COPY;
+        left = expr;
         Object resultExpr = expr.result;
-        expressions = new ArrayList<Expression>(expr.expressions);
-        expressions.add(expr);
         if (resultExpr instanceof Integer || resultExpr instanceof Boolean || resultExpr instanceof String) {
             result = expr.result;
-            text = expr.text;
-            iCode = "$" + name + "=" + expr.name;
         } else
-            throw new SemanticException(
-                    String.format("Undefined class result \"%s\"", resultExpr.getClass()));
+            throw new SemanticException(new Diagnostic(Diagnostic.Kind.SEMANTIC,
+                    "Undefined class result \"%s\"", resultExpr.getClass()));
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param leftBr  левая скобка
      * @param expr    выражение
      * @param rightBr правая скобка
      */
-    public Expression(String leftBr, Expression expr, String rightBr) {
-        name = "E" + counter++;
-        text = String.format("(%s) = %s", expr.name, expr.result);
+    public Expression(Compilation compilation, String leftBr, Expression expr, String rightBr) {
+        id = compilation.nextExpression();
+        kind = Expression.Kind.COPY;
+        left = expr;
+        brackets = true;
         result = expr.result;
-        expressions = new ArrayList<Expression>(expr.expressions);
-        expressions.add(expr);
-        iCode = "$" + name + "=" + expr.name;
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param operation унарная операция
      * @param expr      выражение
      * @throws SemanticException семантическая ошибка
      */
-    public Expression(String operation, Expression expr) throws SemanticException {
-        name = "E" + counter++;
+    public Expression(Compilation compilation, String operation, Expression expr) throws SemanticException {
+        id = compilation.nextExpression();
+        kind = Expression.Kind.UNARY;
+        this.operation = operation;
+        left = expr;
         if (expr.result instanceof Integer) {
             int expr1 = (int) expr.result;
             switch (operation) {
@@ -159,24 +332,29 @@ public class Expression {
                     result = !expr1;
                     break;
             }
-        } else
-            throw new SemanticException(String.format("Undefined class result \"%s\"", expr.result));
-        text = operation + expr.name + " = " + result;
-        expressions = new ArrayList<Expression>(expr.expressions);
-        expressions.add(expr);
-        iCode = "$" + name + "=" + operation + expr.name;
+        } else if (expr.result == null) {
+            result = null;
+        } else if (compilation.getMode() != Parser.Mode.COMPILE)
+            // При компиляции типы проверяет TypeChecker
+            throw new SemanticException(new Diagnostic(Diagnostic.Kind.SEMANTIC,
+                    "Undefined class result \"%s\"", expr.result));
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param operation арифметическая (логическая) операция
      * @param exprLeft  выражение слева
      * @param exprRight выражение справа
      * @throws SemanticException семантическая ошибка
      */
-    public Expression(String operation, Expression exprLeft, Expression exprRight) throws SemanticException {
-        name = "E" + counter++;
+    public Expression(Compilation compilation, String operation, Expression exprLeft, Expression exprRight) throws SemanticException {
+        id = compilation.nextExpression();
+        kind = Expression.Kind.BINARY;
+        this.operation = operation;
+        left = exprLeft;
+        right = exprRight;
         if (exprLeft.result instanceof Integer && exprRight.result instanceof Integer) {
             int expr1 = (int) exprLeft.result;
             int expr2 = (int) exprRight.result;
@@ -188,7 +366,7 @@ public class Expression {
                     try {
                         result = expr1 / expr2;
                     } catch (ArithmeticException ex) {
-                        throw new SemanticException(ex.getMessage());
+                        throw new SemanticException(new Diagnostic(Diagnostic.Kind.SEMANTIC, "%s", ex));
                     }
                     break;
                 case "+":
@@ -241,31 +419,88 @@ public class Expression {
                     result = expr1 + expr2;
                     break;
                 case "==":
-                    result = expr1 == expr2;
+                    result = expr1.equals(expr2);
                     break;
                 case "!=":
-                    result = expr1 != expr2;
+                    result = !expr1.equals(expr2);
                     break;
             }
         } else if (exprLeft.result == null || exprRight.result == null) {
             result = null;
-        } else
-            throw new SemanticException(String.format("Undefined class result \"%s%s%s\"",
-                    exprLeft.result, operation, exprRight.result));
-        text = exprLeft.name + operation + exprRight.name + " = " + exprLeft.result + operation + exprRight.result
-                + " = " + result;
-        expressions = new ArrayList<Expression>();
-        expressions.addAll(exprLeft.expressions);
-        expressions.add(exprLeft);
-        expressions.addAll(exprRight.expressions);
-        expressions.add(exprRight);
-        iCode = "$" + name + "=$" + exprLeft.name + operation +"$" + exprRight.name;
+        } else if (compilation.getMode() != Parser.Mode.COMPILE)
+            // При компиляции типы проверяет TypeChecker
+            throw new SemanticException(new Diagnostic(Diagnostic.Kind.SEMANTIC,
+                    "Undefined class result \"%s%s%s\"", exprLeft.result, operation, exprRight.result));
     }
 
     /**
-     * Сброс счетчика
+     * Обход выражений в глубину, каждое выражение после своих операндов и не
+     * более одного раза
+     * 
+     * @param roots корневые выражения (null пропускаются)
+     * @return ленивый обход корневых выражений вместе с вложенными
      */
-    public static void resetCounter() {
-        counter = 0;
+    static Iterable<Expression> postOrder(List<Expression> roots) {
+        return () -> new PostOrderIterator(roots);
+    }
+
+    /**
+     * Итератор обхода в глубину на явном стеке
+     */
+    private static class PostOrderIterator implements Iterator<Expression> {
+        // Переменные
+        private ArrayDeque<Expression> stack = new ArrayDeque<>();
+        private ArrayDeque<Boolean> expanded = new ArrayDeque<>();
+        private Set<Expression> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        private Expression next;
+
+        /**
+         * Конструктор
+         * 
+         * @param roots корневые выражения
+         */
+        PostOrderIterator(List<Expression> roots) {
+            for (int i = roots.size() - 1; i >= 0; i--)
+                push(roots.get(i));
+        }
+
+        /**
+         * Положить выражение на стек, операнды которого еще не обойдены
+         * 
+         * @param expr выражение
+         */
+        private void push(Expression expr) {
+            if (expr == null)
+                return;
+            stack.push(expr);
+            expanded.push(false);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !stack.isEmpty()) {
+                Expression expr = stack.pop();
+                if (expanded.pop()) {
+                    next = expr;
+                } else if (!visited.add(expr)) {
+                    continue;
+                } else {
+                    stack.push(expr);
+                    expanded.push(true);
+                    push(expr.right);
+                    push(expr.left);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Expression next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Expression expr = next;
+            next = null;
+            return expr;
+        }
     }
 }
\ No newline at end of file
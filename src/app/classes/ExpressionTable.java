@@ -0,0 +1,181 @@
+package app.classes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import app.classes.exceptions.SemanticException;
+
+/**
+ * Класс таблицы выражений функции
+ * 
+ * Выражения создаются через таблицу (hash-consing): константа с тем же
+ * значением или операция над теми же операндами (по идентичности) возвращает
+ * уже созданное выражение вместе с его временной переменной $E, поэтому
+ * одинаковые подвыражения функции образуют один узел DAG. Чтение переменной
+ * разделяется до следующего присваивания этой переменной. Выражения не имеют
+ * побочных эффектов, так что общий узел равен каждому из заменяемых.
+ */
+public class ExpressionTable {
+    // Поля
+    private Compilation compilation;
+    // Переменные
+    private Map<ExpressionTable.Key, Expression> expressions = new HashMap<>();
+    private Map<Integer, Expression> reads = new HashMap<>();
+
+    /**
+     * Конструктор
+     * 
+     * @param compilation контекст компиляции
+     */
+    public ExpressionTable(Compilation compilation) {
+        this.compilation = compilation;
+    }
+
+    /**
+     * Получить константу
+     * 
+     * @param value значение (int, bool или string)
+     * @return выражение константы
+     */
+    public Expression constant(Object value) {
+        ExpressionTable.Key key = new ExpressionTable.Key(null, value, null, null);
+        Expression expr = expressions.get(key);
+        if (expr == null) {
+            if (value instanceof Integer)
+                expr = new Expression(compilation, (Integer) value);
+            else if (value instanceof Boolean)
+                expr = new Expression(compilation, (Boolean) value);
+            else
+                expr = new Expression(compilation, (String) value);
+            expressions.put(key, expr);
+        }
+        return expr;
+    }
+
+    /**
+     * Получить чтение переменной
+     * 
+     * @param var  переменная
+     * @param slot номер ячейки кадра переменной
+     * @return выражение чтения
+     */
+    public Expression variable(String var, int slot) {
+        Expression expr = reads.get(slot);
+        if (expr == null) {
+            expr = new Expression(compilation, var, slot);
+            reads.put(slot, expr);
+        }
+        return expr;
+    }
+
+    /**
+     * Отметить присваивание переменной: следующее чтение - новое выражение
+     * 
+     * @param slot номер ячейки кадра переменной
+     */
+    public void assign(int slot) {
+        reads.remove(slot);
+    }
+
+    /**
+     * Получить выражение в скобках
+     * 
+     * @param expr выражение
+     * @return выражение в скобках
+     */
+    public Expression brackets(Expression expr) {
+        ExpressionTable.Key key = new ExpressionTable.Key("(", null, expr, null);
+        Expression result = expressions.get(key);
+        if (result == null) {
+            result = new Expression(compilation, "(", expr, ")");
+            expressions.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Получить одноместную операцию
+     * 
+     * @param operation операция
+     * @param expr      операнд
+     * @return выражение операции
+     * @throws SemanticException семантическая ошибка
+     */
+    public Expression unary(String operation, Expression expr) throws SemanticException {
+        ExpressionTable.Key key = new ExpressionTable.Key(operation, null, expr, null);
+        Expression result = expressions.get(key);
+        if (result == null) {
+            result = new Expression(compilation, operation, expr);
+            expressions.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Получить двуместную операцию
+     * 
+     * @param operation операция
+     * @param left      левый операнд
+     * @param right     правый операнд
+     * @return выражение операции
+     * @throws SemanticException семантическая ошибка
+     */
+    public Expression binary(String operation, Expression left, Expression right) throws SemanticException {
+        ExpressionTable.Key key = new ExpressionTable.Key(operation, null, left, right);
+        Expression result = expressions.get(key);
+        if (result == null) {
+            result = new Expression(compilation, operation, left, right);
+            expressions.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Очистить таблицу (начало новой функции)
+     */
+    public void clear() {
+        expressions.clear();
+        reads.clear();
+    }
+
+    /**
+     * Ключ выражения: операция, значение константы и операнды по идентичности
+     */
+    private static class Key {
+        // Свойства
+        private String operation;
+        private Object value;
+        private Expression left;
+        private Expression right;
+
+        /**
+         * Конструктор
+         * 
+         * @param operation операция или null для константы
+         * @param value     значение константы
+         * @param left      левый (единственный) операнд
+         * @param right     правый операнд
+         */
+        Key(String operation, Object value, Expression left, Expression right) {
+            this.operation = operation;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ExpressionTable.Key))
+                return false;
+            ExpressionTable.Key key = (ExpressionTable.Key) obj;
+            return Objects.equals(operation, key.operation) && Objects.equals(value, key.value)
+                    && left == key.left && right == key.right;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operation, value, System.identityHashCode(left), System.identityHashCode(right));
+        }
+    }
+}
\ No newline at end of file
@@ -1,21 +1,19 @@
 package app.classes;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class Function {
     // Свойства
-    private String name;
-    private String text;
+    private int id;
     private String functionVariable;
-    private Map<String, Expression> arguments = new HashMap<String, Expression>();
+    private Map<String, Expression> arguments = new LinkedHashMap<String, Expression>();
     private Expression returnedExpression;
+    private Expression.Type returnType;
     // Поля
-    private Map<String, Expression> variables = new HashMap<String, Expression>();
+    private Scope scope = new Scope();
     private ArrayList<Statement> statements = new ArrayList<>();
-    // Статические поля
-    private static int counter = 0;
 
     /**
      * Получить имя выражения
@@ -23,7 +21,7 @@ public class Function {
      * @return имя выражения
      */
     public String getName() {
-        return name;
+        return "F" + id;
     }
 
     /**
@@ -35,13 +33,38 @@ public class Function {
         return returnedExpression;
     }
 
+    /**
+     * Получить статический тип возвращаемого значения ({@link TypeChecker})
+     * 
+     * @return тип или null, если функция не возвращает значение или тип не
+     *         определен
+     */
+    public Expression.Type getReturnType() {
+        return returnType;
+    }
+
+    /**
+     * Задать статический тип возвращаемого значения
+     * 
+     * @param returnType тип
+     */
+    void setReturnType(Expression.Type returnType) {
+        this.returnType = returnType;
+    }
+
     /**
      * Получить содержимое выражения
      * 
      * @return содержимое выражения
      */
     public String getText() {
-        return text;
+        StringBuilder result = new StringBuilder(getName()).append(" -> def ").append(functionVariable).append(" ( ");
+        for (Expression e : arguments.values())
+            result.append(e.getName()).append(' ');
+        result.append(") { ");
+        for (Statement s : statements)
+            result.append(s.getName()).append(' ');
+        return result.append("} ").toString();
     }
 
     /**
@@ -56,7 +79,8 @@ public class Function {
     /**
      * Получить словарь аргументов функции
      * 
-     * @return словарь строка-выражение аргументов
+     * @return словарь строка-выражение аргументов в порядке объявления
+     *         (аргументы вызова связываются с ними по номеру)
      */
     public Map<String, Expression> getArguments() {
         return arguments;
@@ -65,32 +89,60 @@ public class Function {
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param funcVar    переменная-имя функции
      * @param funcArgs   аргументы функции
-     * @param funcVars   переменные функции
+     * @param scope      область видимости функции (аргументы и переменные)
      * @param funcStates операторы функции
      * @param rtrnExpr   возвращаемое выражение функции
      */
-    public Function(String funcVar, Map<String, Expression> funcArgs, Map<String, Expression> funcVars,
+    public Function(Compilation compilation, String funcVar, Map<String, Expression> funcArgs, Scope scope,
             ArrayList<Statement> funcStates) {
-        name = "F" + counter++;
+        this(compilation, funcVar, funcArgs);
+        setBody(scope, funcStates);
+    }
+
+    /**
+     * Конструктор объявления функции (тело задается позже через
+     * {@link #setBody(Scope, ArrayList)})
+     * 
+     * @param compilation контекст компиляции
+     * @param funcVar     переменная-имя функции
+     * @param funcArgs    аргументы функции
+     */
+    public Function(Compilation compilation, String funcVar, Map<String, Expression> funcArgs) {
+        id = compilation.nextFunction();
         functionVariable = funcVar;
         arguments = funcArgs;
-        variables.putAll(funcArgs);
-        variables.putAll(funcVars);
-        String argsText = " ( ";
-        for (Expression e : arguments.values()) {
-            argsText = argsText + e.getName() + " ";
-        }
-        argsText = argsText + ") ";
+    }
+
+    /**
+     * Задать тело функции
+     * 
+     * @param scope      область видимости функции (аргументы и переменные)
+     * @param funcStates операторы функции
+     */
+    public void setBody(Scope scope, ArrayList<Statement> funcStates) {
+        this.scope = scope;
         statements = funcStates;
-        String statesText = "{ ";
-        for (Statement s : statements) {
-            statesText = statesText + s.getName() + " ";
-        }
-        statesText = statesText + "} ";
-        //returnedExpression = rtrnExpr;
-        text = name + " -> def " + funcVar + argsText + statesText;
+    }
+
+    /**
+     * Получить область видимости функции
+     * 
+     * @return аргументы и переменные с номерами ячеек кадра
+     */
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Получить операторы функции
+     * 
+     * @return список операторов
+     */
+    public ArrayList<Statement> getStatements() {
+        return statements;
     }
 
     /**
@@ -116,14 +168,7 @@ public class Function {
         String argsText = "";
         for (Expression e : arguments.values())
             argsText += "  " + e.getName() + " -> " + e.getText() + "\n";
-        result += text + '\n' + argsText + printStatements();
+        result += getText() + '\n' + argsText + printStatements();
         return result;
     }
-
-    /**
-     * Сброс счетчика
-     */
-    public static void resetCounter() {
-        counter = 0;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,520 @@
+package app.classes;
+
+import java.util.Arrays;
+
+import app.classes.exceptions.LexicalException;
+
+/**
+ * Класс инкрементального лексического анализа
+ * 
+ * Хранит текст документа и его токены. При изменении текста
+ * ({@link #edit(int, int, CharSequence)}) разбор начинается заново с начала
+ * строки, в которой начинается изменение, и идет только до тех пор, пока новый
+ * токен не совпадет со старым токеном после изменения. Остальные токены не
+ * разбираются заново, а сдвигаются: текст и токены хранятся с разрывом в месте
+ * последнего изменения, а токены после разрыва - относительно общих сдвигов
+ * начала и строки, так что сдвиг стоит O(1). Стоимость изменения пропорциональна
+ * размеру изменения и расстоянию до предыдущего изменения, а не размеру текста.
+ * Токены и их положения совпадают с разбором всего текста {@link Lexer}.
+ */
+public class IncrementalLexer implements TokenStream {
+    // Свойства
+    private static final Token.Type[] types = Token.Type.values();
+    private Text text;
+    private TokenBuffer symbols;
+    // Поля
+    private byte[] type = new byte[256];
+    private int[] start = new int[256];
+    private int[] length = new int[256];
+    private int[] line = new int[256];
+    private int[] pos = new int[256];
+    private int[] symbol = new int[256];
+    private int before;
+    private int after;
+    private int startShift;
+    private int lineShift;
+    private boolean valid;
+    private int relexed;
+    // Переменные
+    private int editEnd;
+    private int firstLine;
+    private boolean firstShift;
+    private boolean synced;
+
+    /**
+     * Конструктор
+     * 
+     * @param input текст документа
+     * @throws LexicalException лексическая ошибка
+     */
+    public IncrementalLexer(CharSequence input) throws LexicalException {
+        text = new Text(input);
+        symbols = new TokenBuffer(text);
+        relex(0, 1);
+    }
+
+    /**
+     * Изменить текст
+     * 
+     * @param offset   начало изменения
+     * @param removed  количество удаленных символов
+     * @param inserted вставленный текст
+     * @throws LexicalException лексическая ошибка в новом тексте (токены
+     *                          недоступны до следующего изменения, которое
+     *                          разбирает весь текст)
+     */
+    public void edit(int offset, int removed, CharSequence inserted) throws LexicalException {
+        if (offset < 0 || removed < 0 || offset + removed > text.length())
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removed + " is out of the text");
+        if (!valid) {
+            text.replace(offset, removed, inserted);
+            before = 0;
+            after = 0;
+            relex(0, 1);
+            return;
+        }
+        // Начало строки, с которого разбор совпадает с разбором всего текста
+        int restart = offset;
+        while (!Lexer.isRestartPoint(text, restart))
+            restart--;
+        final int first = find(restart);
+        int restartLine = 1;
+        int scanned = 0;
+        if (first > 0) {
+            restartLine = getLine(first - 1);
+            scanned = sourceEnd(first - 1);
+        }
+        moveGap(first);
+        text.replace(offset, removed, inserted);
+        // Переносы после последнего токена до начала разбора включительно
+        for (int i = scanned + 1; i <= restart && i < text.length(); i++)
+            if (text.charAt(i) == '\n')
+                restartLine++;
+        startShift += inserted.length() - removed;
+        editEnd = offset + inserted.length();
+        relex(restart, restartLine);
+    }
+
+    /**
+     * Получить текст документа
+     * 
+     * @return текст
+     */
+    public String getSource() {
+        return text.toString();
+    }
+
+    /**
+     * Количество токенов, разобранных при последнем изменении
+     * 
+     * @return количество токенов
+     */
+    public int getRelexed() {
+        return relexed;
+    }
+
+    /**
+     * Получить количество токенов
+     * 
+     * @return количество токенов
+     */
+    public int size() {
+        check();
+        return before + after;
+    }
+
+    @Override
+    public boolean has(int index) {
+        return index >= 0 && index < size();
+    }
+
+    @Override
+    public Token.Type getType(int index) {
+        return types[type[slot(index)]];
+    }
+
+    @Override
+    public String getText(int index) {
+        final int slot = slot(index);
+        if (symbol[slot] >= 0)
+            return symbols.getName(symbol[slot]);
+        final int from = getStart(index);
+        if (types[type[slot]] == Token.Type.STRING)
+            return TokenBuffer.unescape(text, from, from + length[slot]);
+        return text.subSequence(from, from + length[slot]).toString();
+    }
+
+    @Override
+    public int getLine(int index) {
+        final int slot = slot(index);
+        return index < before ? line[slot] : line[slot] + lineShift;
+    }
+
+    @Override
+    public int getPos(int index) {
+        return pos[slot(index)];
+    }
+
+    /**
+     * Получить начало содержимого токена в тексте
+     * 
+     * @param index номер токена
+     * @return позиция в тексте
+     */
+    public int getStart(int index) {
+        final int slot = slot(index);
+        return index < before ? start[slot] : start[slot] + startShift;
+    }
+
+    /**
+     * Получить номер символа имени токена
+     * 
+     * @param index номер токена
+     * @return номер символа или -1
+     */
+    public int getSymbol(int index) {
+        return symbol[slot(index)];
+    }
+
+    /**
+     * Получить таблицу символов имен
+     * 
+     * @return хранилище с таблицей символов
+     */
+    public TokenBuffer getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Разобрать текст с начала строки до совпадения с прежними токенами или до
+     * конца текста
+     * 
+     * @param restart     начало разбора
+     * @param restartLine номер строки в начале разбора
+     * @throws LexicalException лексическая ошибка
+     */
+    private void relex(int restart, int restartLine) throws LexicalException {
+        valid = false;
+        relexed = 0;
+        synced = false;
+        firstLine = restartLine - 1;
+        // Лексер не считает перенос в самом начале разбора, поэтому позиции первой
+        // строки сдвигаются, только если разбор начинается не с переноса
+        firstShift = restart > 0 && restart < text.length() && text.charAt(restart) != '\n';
+        final Source lexer = new Source(new View(text, restart), restart);
+        while (!synced && !lexer.isEnd(lexer.getPosition()))
+            lexer.step();
+        if (!synced)
+            after = 0;
+        valid = true;
+    }
+
+    /**
+     * Добавить токен, разобранный заново (или закончить разбор, если токен
+     * совпал с прежним)
+     * 
+     * @param tokenType  тип токена
+     * @param from       начало содержимого
+     * @param to         конец содержимого
+     * @param tokenLine  строка токена
+     * @param tokenPos   позиция токена в строке
+     * @param name       номер символа или -1
+     */
+    private void add(Token.Type tokenType, int from, int to, int tokenLine, int tokenPos, int name) {
+        final int begin = from - prefix(tokenType);
+        // Прежние токены, оставшиеся позади нового, больше не нужны
+        while (after > 0 && sourceBegin(before) < begin)
+            after--;
+        if (after > 0 && begin >= editEnd && sourceBegin(before) == begin) {
+            final int slot = type.length - after;
+            if (types[type[slot]] == tokenType && length[slot] == to - from && pos[slot] == tokenPos) {
+                lineShift += tokenLine - (line[slot] + lineShift);
+                synced = true;
+                return;
+            }
+        }
+        if (before + after == type.length)
+            grow();
+        type[before] = (byte) tokenType.ordinal();
+        start[before] = from;
+        length[before] = to - from;
+        line[before] = tokenLine;
+        pos[before] = tokenPos;
+        symbol[before] = name;
+        before++;
+        relexed++;
+    }
+
+    /**
+     * Найти первый токен, который начинается не раньше позиции
+     * 
+     * @param position позиция в тексте
+     * @return номер токена
+     */
+    private int find(int position) {
+        int low = 0;
+        int high = before + after;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (sourceBegin(middle) < position)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Переместить разрыв токенов к токену
+     * 
+     * @param index номер токена, с которого начинаются токены после разрыва
+     */
+    private void moveGap(int index) {
+        final int gap = type.length - before - after;
+        while (before > index) {
+            before--;
+            final int to = before + gap;
+            move(before, to);
+            start[to] -= startShift;
+            line[to] -= lineShift;
+            after++;
+        }
+        while (before < index) {
+            final int from = before + gap;
+            move(from, before);
+            start[before] += startShift;
+            line[before] += lineShift;
+            before++;
+            after--;
+        }
+    }
+
+    /**
+     * Переместить токен между ячейками
+     * 
+     * @param from исходная ячейка
+     * @param to   ячейка назначения
+     */
+    private void move(int from, int to) {
+        type[to] = type[from];
+        start[to] = start[from];
+        length[to] = length[from];
+        line[to] = line[from];
+        pos[to] = pos[from];
+        symbol[to] = symbol[from];
+    }
+
+    /**
+     * Увеличить массивы токенов (токены после разрыва остаются в конце)
+     */
+    private void grow() {
+        final int capacity = type.length * 2;
+        final int tail = type.length - after;
+        type = grow(type, capacity, tail);
+        start = grow(start, capacity, tail);
+        length = grow(length, capacity, tail);
+        line = grow(line, capacity, tail);
+        pos = grow(pos, capacity, tail);
+        symbol = grow(symbol, capacity, tail);
+    }
+
+    private byte[] grow(byte[] array, int capacity, int tail) {
+        final byte[] result = Arrays.copyOf(array, capacity);
+        System.arraycopy(array, tail, result, capacity - after, after);
+        return result;
+    }
+
+    private int[] grow(int[] array, int capacity, int tail) {
+        final int[] result = Arrays.copyOf(array, capacity);
+        System.arraycopy(array, tail, result, capacity - after, after);
+        return result;
+    }
+
+    /**
+     * Начало токена в тексте (с открывающей кавычкой строки)
+     * 
+     * @param index номер токена
+     * @return позиция в тексте
+     */
+    private int sourceBegin(int index) {
+        return getStart(index) - prefix(getType(index));
+    }
+
+    /**
+     * Конец токена в тексте (с закрывающей кавычкой строки)
+     * 
+     * @param index номер токена
+     * @return позиция в тексте
+     */
+    private int sourceEnd(int index) {
+        final int slot = slot(index);
+        return getStart(index) + length[slot] + (types[type[slot]] == Token.Type.STRING ? 1 : 0);
+    }
+
+    private static int prefix(Token.Type tokenType) {
+        return tokenType == Token.Type.STRING ? 1 : 0;
+    }
+
+    /**
+     * Получить ячейку токена
+     * 
+     * @param index номер токена
+     * @return ячейка массивов
+     */
+    private int slot(int index) {
+        if (index < 0 || index >= before + after)
+            throw new IndexOutOfBoundsException("Token " + index + " does not exist");
+        return index < before ? index : type.length - after + (index - before);
+    }
+
+    /**
+     * Проверить, что токены соответствуют тексту
+     */
+    private void check() {
+        if (!valid)
+            throw new IllegalStateException("The text has a lexical error");
+    }
+
+    /**
+     * Лексер над частью текста с начала строки
+     */
+    private class Source extends Lexer {
+        // Свойства
+        private int offset;
+
+        /**
+         * Конструктор
+         * 
+         * @param input  текст с начала разбора
+         * @param offset начало разбора в тексте
+         */
+        Source(View input, int offset) {
+            super(input, symbols);
+            this.offset = offset;
+        }
+
+        @Override
+        protected void addToken(Token.Type tokenType, int from, int to, int tokenLine, int tokenPos, int name) {
+            add(tokenType, from + offset, to + offset, tokenLine + firstLine,
+                    firstShift && tokenLine == 1 ? tokenPos + 1 : tokenPos, name);
+        }
+
+        @Override
+        protected void addTrivia(int from, int to, int tokenLine, int tokenPos) {
+            // Комментарии восстанавливаются из текста между токенами
+        }
+    }
+
+    /**
+     * Часть текста с позиции до конца
+     */
+    private static class View implements CharSequence {
+        // Свойства
+        private Text text;
+        private int offset;
+
+        View(Text text, int offset) {
+            this.text = text;
+            this.offset = offset;
+        }
+
+        @Override
+        public int length() {
+            return text.length() - offset;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.charAt(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(offset + start, offset + end);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+
+    /**
+     * Текст с разрывом в месте последнего изменения
+     */
+    private static class Text implements CharSequence {
+        // Свойства
+        private char[] chars;
+        // Поля
+        private int gapStart;
+        private int gapEnd;
+
+        Text(CharSequence input) {
+            chars = new char[Math.max(input.length() * 2, 16)];
+            gapEnd = chars.length;
+            replace(0, 0, input);
+        }
+
+        /**
+         * Заменить часть текста
+         * 
+         * @param offset   начало
+         * @param removed  количество удаляемых символов
+         * @param inserted вставляемый текст
+         */
+        void replace(int offset, int removed, CharSequence inserted) {
+            moveGap(offset);
+            gapEnd += removed;
+            final int count = inserted.length();
+            if (gapEnd - gapStart < count) {
+                final int tail = chars.length - gapEnd;
+                final char[] grown = new char[Math.max(chars.length * 2, length() + count + 16)];
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+                chars = grown;
+                gapEnd = grown.length - tail;
+            }
+            for (int i = 0; i < count; i++)
+                chars[gapStart++] = inserted.charAt(i);
+        }
+
+        private void moveGap(int offset) {
+            if (offset < gapStart) {
+                final int count = gapStart - offset;
+                System.arraycopy(chars, offset, chars, gapEnd - count, count);
+                gapStart -= count;
+                gapEnd -= count;
+            } else if (offset > gapStart) {
+                final int count = offset - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, count);
+                gapStart += count;
+                gapEnd += count;
+            }
+        }
+
+        @Override
+        public int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length())
+                throw new IndexOutOfBoundsException("Position " + index + " is out of the text");
+            return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            final StringBuilder result = new StringBuilder(end - start);
+            for (int i = start; i < end; i++)
+                result.append(charAt(i));
+            return result.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
\ No newline at end of file
@@ -1,55 +1,141 @@
 package app.classes;
 
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Map;
 
+/**
+ * Класс записи промежуточного кода
+ *
+ * Код записывается в виде трехадресных инструкций ({@link ThreeAddressCode}).
+ * Если задан приемник ({@link Appendable}, {@link java.io.Writer} или
+ * {@link WritableByteChannel}), инструкции печатаются в него в текстовом виде и
+ * сбрасываются после каждой функции, поэтому при записи в файл в памяти не
+ * накапливаются. Каждый экземпляр принадлежит одной компиляции.
+ *
+ * Выражение, общее для нескольких операторов ({@link ExpressionTable}),
+ * вычисляется один раз на линейном участке: до следующей метки его временная
+ * переменная $E используется повторно.
+ */
 public class IntermediateCode {
     // Свойства
-    private static String iCode = "";
-    private static Boolean stop = false;
-    // Поля
-    private static String tab1 = "  ";
+    private ThreeAddressCode code = new ThreeAddressCode();
+    private Appendable out;
+    private Boolean stop = false;
+    private Boolean strict = false;
+    // Переменные
+    private BitSet computed = new BitSet();
+
+    /**
+     * Конструктор (код накапливается в памяти и доступен через {@link #getCode()})
+     */
+    public IntermediateCode() {
+    }
+
+    /**
+     * Конструктор
+     *
+     * @param out приемник текста промежуточного кода
+     */
+    public IntermediateCode(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * Конструктор
+     *
+     * @param channel канал, в который записывается текст промежуточного кода (UTF-8)
+     */
+    public IntermediateCode(WritableByteChannel channel) {
+        this(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Получить трехадресный код
+     *
+     * @return инструкции (при записи в приемник - только еще не сброшенные)
+     */
+    public ThreeAddressCode getCode() {
+        return code;
+    }
 
     /**
      * Получить промежуточный код
-     * 
-     * @return код (string)
+     *
+     * @return код (string) или null, если код записывается во внешний приемник
      */
-    public static String getICode() {
-        return iCode;
+    public String getICode() {
+        if (out != null)
+            return null;
+        return code.toString();
     }
 
     /**
      * Остановить запись промежуточного кода
      * @param stop логическая команда
      */
-    public static void setStop(Boolean stop) {
-        IntermediateCode.stop = stop;
+    public void setStop(Boolean stop) {
+        this.stop = stop;
+    }
+
+    /**
+     * Задать строгую запись промежуточного кода: операнды операций и аргументы
+     * вызовов записываются вместе с вычисляющим их кодом
+     * @param strict логическая команда
+     */
+    public void setStrict(Boolean strict) {
+        this.strict = strict;
     }
 
     /**
      * Сбросить промежуточный код
      */
-    public static void resetICode() {
-        iCode = "";
+    public void resetICode() {
+        code.clear();
+        computed.clear();
+    }
+
+    /**
+     * Напечатать еще не напечатанные инструкции в приемник и сбросить его
+     */
+    public void flush() {
+        if (out == null)
+            return;
+        try {
+            code.print(out, 0, code.size());
+            code.clear();
+            if (out instanceof Flushable)
+                ((Flushable) out).flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
     }
 
     /**
      * Задать промежуточный код функции - начало
      * @param funcVar имя функции
      * @param funcArgs аргументы функции
+     * @param scope область видимости функции (кадр пополняется до конца разбора тела)
      */
-    public static void setFunction_Start(String funcVar, Map<String, Expression> funcArgs) {
-        iCode += funcVar + ":\n";
-        for (String a : funcArgs.keySet()) {
-            iCode += tab1 + "pop " + a + "\n";
+    public void setFunction_Start(String funcVar, Map<String, Expression> funcArgs, Scope scope) {
+        code.add(ThreeAddressCode.FUNCTION, code.symbol(funcVar), code.frame(scope.getNames()), 0);
+        computed.clear();
+        for (Expression a : funcArgs.values()) {
+            code.add(ThreeAddressCode.POP, ThreeAddressCode.var(a.getSlot()), 0, 0);
         }
     }
     /**
      * Задать промежуточный код функции - конец
      */
-    public static void setFunction_End() {
-        iCode += "return" + "\n";
+    public void setFunction_End() {
+        code.add(ThreeAddressCode.END, 0, 0, 0);
+        flush();
     }
 
     /**
@@ -57,43 +143,50 @@ public class IntermediateCode {
      * @param funcVar имя функции
      * @param funcArgs аргументы функции
      */
-    public static void setFunction_Call(String funcVar, Map<String, Expression> funcArgs) {
+    public void setFunction_Call(String funcVar, Map<String, Expression> funcArgs) {
         ArrayList<Expression> funcArgsExprList = new ArrayList<Expression>();
         for (Expression e : funcArgs.values()) {
             funcArgsExprList.add(0, e);
         }
         for (Expression e : funcArgsExprList) {
+            if (strict)
+                for (Expression d : e.getExpressions())
+                    setExpression(d);
             setExpression(e);
-            iCode += tab1 + "push $" + e.getName() + "\n";
+            code.add(ThreeAddressCode.PUSH, ThreeAddressCode.temp(e.getId()), 0, 0);
         }
-        iCode += tab1 + "call " + funcVar + " " + funcArgs.size() + "\n";
+        code.add(ThreeAddressCode.CALL, code.symbol(funcVar), funcArgs.size(), 0);
     }
 
     /**
      * Задать промежуточный код присвоения
-     * @param var переменная
+     * @param slot номер ячейки кадра переменной
      * @param expr присваиваемое выражение
      */
-    public static void setAssign(String var, Expression expr) {
+    public void setAssign(int slot, Expression expr) {
         if (stop)
             return;
         for (Expression e : expr.getExpressions()) {
             setExpression(e);
         }
-        iCode += tab1 + expr.getICode() + "\n";
-        iCode += tab1 + var + "=$" + expr.getName() + "\n";
+        setExpression(expr);
+        code.add(ThreeAddressCode.ASSIGN, ThreeAddressCode.var(slot),
+                ThreeAddressCode.temp(expr.getId()), 0);
     }
 
     /**
      * Задать промежуточный код операции
      */
-    public static void setOperation(String operation, Expression expr) {
+    public void setOperation(String operation, Expression expr) {
         if (stop)
             return;
         for (Expression e : expr.getExpressions()) {
             setExpression(e);
         }
-        iCode += tab1 + operation + " $" + expr.getName() + "\n";
+        if (strict)
+            setExpression(expr);
+        int op = "print".equals(operation) ? ThreeAddressCode.PRINT : ThreeAddressCode.RETURN;
+        code.add(op, ThreeAddressCode.temp(expr.getId()), 0, 0);
     }
 
     /**
@@ -101,14 +194,14 @@ public class IntermediateCode {
      * @param expr выражение условия
      * @param label метка
      */
-    public static void setIfFalse(Expression expr, int label) {
+    public void setIfFalse(Expression expr, int label) {
         if (stop)
             return;
         for (Expression e : expr.getExpressions()) {
             setExpression(e);
         }
-        iCode += tab1 + expr.getICode() + "\n";
-        iCode += tab1 + "ifFalse $" + expr.getName() + " goto " + label + "\n";
+        setExpression(expr);
+        code.add(ThreeAddressCode.IF_FALSE, ThreeAddressCode.temp(expr.getId()), label, 0);
     }
 
     /**
@@ -116,47 +209,72 @@ public class IntermediateCode {
      * @param expr выражение условия
      * @param label метка
      */
-    public static void setIfTrue(Expression expr, int label) {
+    public void setIfTrue(Expression expr, int label) {
         if (stop)
             return;
         for (Expression e : expr.getExpressions()) {
             setExpression(e);
         }
-        iCode += tab1 + expr.getICode() + "\n";
-        iCode += tab1 + "ifTrue $" + expr.getName() + " goto " + label + "\n";
+        setExpression(expr);
+        code.add(ThreeAddressCode.IF_TRUE, ThreeAddressCode.temp(expr.getId()), label, 0);
     }
 
     /**
      * Задать переход к метке goto
      * @param label метка
      */
-    public static void setGoto(int label) {
-        iCode += tab1 + "goto " + label + "\n";
+    public void setGoto(int label) {
+        code.add(ThreeAddressCode.GOTO, label, 0, 0);
     }
 
     /**
      * Задать метку
      * @param label метка
      */
-    public static void setLabel(int label) {
-        iCode += label + ":\n";
+    public void setLabel(int label) {
+        code.add(ThreeAddressCode.LABEL, label, 0, 0);
+        // На метку можно перейти из другого участка: вычисленные выражения не переносятся
+        computed.clear();
     }
 
     /**
      * Задать метку с переходом на предыдущую метку
      * @param label метка
      */
-    public static void setLabel_GotoPreviousLabel(int label) {
-        iCode += label + ":\n";
-        iCode += tab1 + "goto " + (label - 1) + "\n";
-        iCode += (label - 1) + ":\n";
+    public void setLabel_GotoPreviousLabel(int label) {
+        setLabel(label);
+        setGoto(label - 1);
+        setLabel(label - 1);
     }
 
     /**
      * Задать промежуточный код выражения
      * @param expr выражение
      */
-    private static void setExpression(Expression expr) {
-        iCode += tab1 + expr.getICode() + "\n";
+    private void setExpression(Expression expr) {
+        if (computed.get(expr.getId()))
+            return;
+        computed.set(expr.getId());
+        int result = ThreeAddressCode.temp(expr.getId());
+        switch (expr.getKind()) {
+            case VARIABLE:
+                code.add(ThreeAddressCode.ASSIGN, result, ThreeAddressCode.var(expr.getSlot()), 0);
+                break;
+            case CONSTANT:
+                code.add(ThreeAddressCode.ASSIGN, result,
+                        ThreeAddressCode.constantOperand(code.constant(expr.getResult())), 0);
+                break;
+            case COPY:
+                code.add(ThreeAddressCode.ASSIGN, result, ThreeAddressCode.temp(expr.getLeft().getId()), 0);
+                break;
+            case UNARY:
+                code.add(ThreeAddressCode.unaryOpcode(expr.getOperation()), result,
+                        ThreeAddressCode.temp(expr.getLeft().getId()), 0);
+                break;
+            case BINARY:
+                code.add(ThreeAddressCode.binaryOpcode(expr.getOperation()), result,
+                        ThreeAddressCode.temp(expr.getLeft().getId()), ThreeAddressCode.temp(expr.getRight().getId()));
+                break;
+        }
     }
-}
\ No newline at end of file
+}
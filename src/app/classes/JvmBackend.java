@@ -0,0 +1,934 @@
+package app.classes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import app.classes.exceptions.ExecutionException;
+import app.classes.exceptions.SemanticException;
+
+/**
+ * Класс генерации байт-кода JVM
+ *
+ * Каждая функция трехадресного кода ({@link Parser.Mode#COMPILE}) переводится в
+ * статический метод int f(int...) скрытого класса
+ * ({@link MethodHandles.Lookup#defineHiddenClass}), который выгружается вместе с
+ * объектом back-end. Значения int и bool хранятся в примитивных локальных
+ * переменных int, вызовы функций становятся invokestatic. Строки back-end не
+ * поддерживает. У переменной int нет значения null, поэтому функции, которые
+ * могут прочитать переменную до присваивания, тоже не переводятся в байт-код.
+ * Если функция с return может завершиться и без значения, метод отмечает это в
+ * статическом поле класса, и {@link #run} возвращает null, как виртуальная машина.
+ *
+ * Класс записывается в формате версии 49, которая не требует таблиц StackMapTable.
+ */
+public class JvmBackend {
+    // Типы значений
+    private static final int UNKNOWN = 0;
+    private static final int INT = 1;
+    private static final int BOOL = 2;
+    // Команды JVM
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ISTORE = 0x36;
+    private static final int POP = 0x57;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IDIV = 0x6c;
+    private static final int INEG = 0x74;
+    private static final int IAND = 0x7e;
+    private static final int IOR = 0x80;
+    private static final int IXOR = 0x82;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IF_ICMPEQ = 0x9f;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int IF_ICMPGT = 0xa3;
+    private static final int IF_ICMPLE = 0xa4;
+    private static final int GOTO = 0xa7;
+    private static final int IRETURN = 0xac;
+    private static final int GETSTATIC = 0xb2;
+    private static final int PUTSTATIC = 0xb3;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESTATIC = 0xb8;
+    // Поля
+    private static final String CLASS_NAME = "app/classes/CatCodeProgram";
+    private static final String NO_VALUE = "noValue";
+    private Class<?> program;
+    private Map<String, MethodHandle> methods = new HashMap<>();
+    private Map<String, Integer> returnTypes = new HashMap<>();
+    private Set<String> valueFunctions = new HashSet<>();
+    private Set<String> partialFunctions = new HashSet<>();
+    private MethodHandle noValue;
+    // Переменные (генерация)
+    private ThreeAddressCode code;
+    private ArrayList<String> functionNames = new ArrayList<>();
+    private ArrayList<int[]> functionRanges = new ArrayList<>();
+    private Map<String, int[]> argumentTypes = new HashMap<>();
+    private ConstantPool pool = new ConstantPool();
+
+    /**
+     * Конструктор
+     *
+     * @param code трехадресный код программы
+     * @throws SemanticException код не может быть переведен в байт-код
+     */
+    public JvmBackend(ThreeAddressCode code) throws SemanticException {
+        this.code = code;
+        for (int i = 0; i < code.size(); i++) {
+            if (code.getOpcode(i) == ThreeAddressCode.FUNCTION) {
+                if (!functionNames.isEmpty())
+                    functionRanges.get(functionRanges.size() - 1)[1] = i;
+                functionNames.add(code.getName(code.getA(i)));
+                functionRanges.add(new int[] { i + 1, code.size() });
+            }
+        }
+        for (int f = 0; f < functionNames.size(); f++)
+            argumentTypes.put(functionNames.get(f), new int[arguments(f)]);
+        byte[] bytes = generate();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            program = lookup.lookupClass();
+            for (int f = 0; f < functionNames.size(); f++) {
+                String name = functionNames.get(f);
+                methods.put(name, lookup.findStatic(program, name, methodType(arguments(f))));
+            }
+            noValue = lookup.findStaticGetter(program, NO_VALUE, boolean.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new SemanticException(String.format("bytecode not loaded: %s", ex.getMessage()));
+        }
+        this.code = null;
+    }
+
+    /**
+     * Получить метод функции
+     *
+     * @param function имя функции
+     * @return статический метод int f(int...) с параметрами в порядке объявления
+     *         или null, если функция не задана
+     */
+    public MethodHandle getMethod(String function) {
+        return methods.get(function);
+    }
+
+    /**
+     * Выполнить функцию
+     *
+     * @param function имя функции
+     * @param args     аргументы функции (int или bool)
+     * @return возвращенное значение (Integer или Boolean) или null, если функция
+     *         завершилась без return, как в {@link VirtualMachine#run}
+     * @throws ExecutionException ошибка выполнения
+     */
+    public Object run(String function, Object... args) throws ExecutionException {
+        MethodHandle method = methods.get(function);
+        if (method == null)
+            throw new ExecutionException(String.format("function \"%s\" not declared", function));
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; i++)
+            values[i] = args[i] instanceof Boolean ? ((Boolean) args[i] ? 1 : 0) : args[i];
+        int result;
+        boolean ended;
+        try {
+            result = (int) method.invokeWithArguments(values);
+            ended = partialFunctions.contains(function) && (boolean) noValue.invokeExact();
+        } catch (ArithmeticException ex) {
+            throw new ExecutionException(ex.getMessage());
+        } catch (StackOverflowError ex) {
+            throw new ExecutionException("call stack overflow");
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new ExecutionException(ex.toString());
+        }
+        if (!valueFunctions.contains(function) || ended)
+            return null;
+        if (returnTypes.get(function) == BOOL)
+            return result != 0;
+        return result;
+    }
+
+    /**
+     * Получить количество аргументов функции (инструкции pop в начале функции)
+     *
+     * @param f номер функции
+     * @return количество аргументов
+     */
+    private int arguments(int f) {
+        int count = 0;
+        for (int i = functionRanges.get(f)[0]; i < functionRanges.get(f)[1]; i++) {
+            if (code.getOpcode(i) != ThreeAddressCode.POP)
+                break;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Получить тип метода
+     *
+     * @param arguments количество аргументов
+     * @return тип (I...I)I
+     */
+    private static MethodType methodType(int arguments) {
+        Class<?>[] params = new Class<?>[arguments];
+        Arrays.fill(params, int.class);
+        return MethodType.methodType(int.class, params);
+    }
+
+    /**
+     * Получить дескриптор метода
+     *
+     * @param arguments количество аргументов
+     * @return дескриптор (I...I)I
+     */
+    private static String descriptor(int arguments) {
+        return "(" + "I".repeat(arguments) + ")I";
+    }
+
+    /**
+     * Генерация файла класса
+     *
+     * @return байты файла класса
+     * @throws SemanticException код не может быть переведен в байт-код
+     */
+    private byte[] generate() throws SemanticException {
+        int count = functionNames.size();
+        Map<Integer, int[]> types = new HashMap<>();
+        // Типы аргументов уточняются по местам вызова до неподвижной точки
+        for (int pass = 0; pass <= count; pass++) {
+            boolean changed = false;
+            for (int f = 0; f < count; f++) {
+                int[] fTypes = inferTypes(f);
+                types.put(f, fTypes);
+                changed |= propagateArguments(f, fTypes);
+            }
+            if (!changed)
+                break;
+        }
+        ArrayList<byte[]> bodies = new ArrayList<>();
+        int thisClass = pool.classInfo(CLASS_NAME);
+        int superClass = pool.classInfo("java/lang/Object");
+        int[] names = new int[count];
+        int[] descriptors = new int[count];
+        for (int f = 0; f < count; f++) {
+            names[f] = pool.utf8(functionNames.get(f));
+            descriptors[f] = pool.utf8(descriptor(arguments(f)));
+            bodies.add(method(f, types.get(f)));
+        }
+        int codeName = pool.utf8("Code");
+        int fieldName = pool.utf8(NO_VALUE);
+        int fieldType = pool.utf8("Z");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            pool.write(out);
+            out.writeShort(0x0031); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // интерфейсы
+            out.writeShort(1); // поля
+            out.writeShort(0x000A); // private static
+            out.writeShort(fieldName);
+            out.writeShort(fieldType);
+            out.writeShort(0); // атрибуты поля
+            out.writeShort(count);
+            for (int f = 0; f < count; f++) {
+                out.writeShort(0x0009); // public static
+                out.writeShort(names[f]);
+                out.writeShort(descriptors[f]);
+                out.writeShort(1);
+                out.writeShort(codeName);
+                out.writeInt(bodies.get(f).length);
+                out.write(bodies.get(f));
+            }
+            out.writeShort(0); // атрибуты класса
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Вывод типов операндов функции
+     *
+     * @param f номер функции
+     * @return типы локальных переменных: по номеру локальной переменной метода
+     * @throws SemanticException строковые значения не поддерживаются
+     */
+    private int[] inferTypes(int f) throws SemanticException {
+        Map<Integer, Integer> locals = locals(f);
+        int[] types = new int[locals.size()];
+        int[] args = argumentTypes.get(functionNames.get(f));
+        System.arraycopy(args, 0, types, 0, args.length);
+        int from = functionRanges.get(f)[0];
+        int to = functionRanges.get(f)[1];
+        boolean changed = true;
+        int returnType = UNKNOWN;
+        while (changed) {
+            changed = false;
+            for (int i = from; i < to; i++) {
+                int op = code.getOpcode(i);
+                int type = UNKNOWN;
+                switch (op) {
+                    case ThreeAddressCode.ASSIGN:
+                        int source = code.getB(i);
+                        if (ThreeAddressCode.kind(source) == ThreeAddressCode.CONST) {
+                            Object value = code.getConstant(ThreeAddressCode.index(source));
+                            if (value instanceof String)
+                                throw new SemanticException(String.format(
+                                        "string \"%s\" not supported by JVM back-end in function \"%s\"", value,
+                                        functionNames.get(f)));
+                            type = value instanceof Boolean ? BOOL : INT;
+                        } else
+                            type = types[locals.get(source)];
+                        break;
+                    case ThreeAddressCode.NEG:
+                    case ThreeAddressCode.ADD:
+                    case ThreeAddressCode.SUB:
+                    case ThreeAddressCode.MUL:
+                    case ThreeAddressCode.DIV:
+                        type = INT;
+                        break;
+                    case ThreeAddressCode.NOT:
+                    case ThreeAddressCode.LT:
+                    case ThreeAddressCode.LTEQ:
+                    case ThreeAddressCode.GT:
+                    case ThreeAddressCode.GTEQ:
+                    case ThreeAddressCode.EQEQ:
+                    case ThreeAddressCode.EXCLEQ:
+                    case ThreeAddressCode.AMPAMP:
+                    case ThreeAddressCode.BARBAR:
+                        type = BOOL;
+                        break;
+                    case ThreeAddressCode.RETURN:
+                        valueFunctions.add(functionNames.get(f));
+                        if (returnType == UNKNOWN)
+                            returnType = types[locals.get(code.getA(i))];
+                        continue;
+                    default:
+                        continue;
+                }
+                int target = locals.get(code.getA(i));
+                if (types[target] == UNKNOWN && type != UNKNOWN) {
+                    types[target] = type;
+                    changed = true;
+                }
+            }
+        }
+        returnTypes.put(functionNames.get(f), returnType);
+        return types;
+    }
+
+    /**
+     * Передать типы значений, передаваемых в вызовы, аргументам вызываемых функций
+     *
+     * @param f     номер функции
+     * @param types типы локальных переменных функции
+     * @return true, если типы аргументов изменились
+     */
+    private boolean propagateArguments(int f, int[] types) {
+        Map<Integer, Integer> locals = locals(f);
+        ArrayList<Integer> pushed = new ArrayList<>();
+        boolean changed = false;
+        for (int i = functionRanges.get(f)[0]; i < functionRanges.get(f)[1]; i++) {
+            int op = code.getOpcode(i);
+            if (op == ThreeAddressCode.PUSH)
+                pushed.add(types[locals.get(code.getA(i))]);
+            else if (op == ThreeAddressCode.CALL) {
+                int n = code.getB(i);
+                int[] args = argumentTypes.get(code.getName(code.getA(i)));
+                for (int j = 0; j < n && args != null && j < args.length; j++) {
+                    // j-й pop получает значение, переданное (n - 1 - j)-м push
+                    int type = pushed.get(pushed.size() - 1 - j);
+                    if (args[j] == UNKNOWN && type != UNKNOWN) {
+                        args[j] = type;
+                        changed = true;
+                    }
+                }
+                for (int j = 0; j < n && !pushed.isEmpty(); j++)
+                    pushed.remove(pushed.size() - 1);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Распределение локальных переменных метода: сначала аргументы, затем
+     * переменные и временные переменные $E
+     *
+     * @param f номер функции
+     * @return номер локальной переменной по операнду
+     */
+    private Map<Integer, Integer> locals(int f) {
+        Map<Integer, Integer> locals = new HashMap<>();
+        int from = functionRanges.get(f)[0];
+        int to = functionRanges.get(f)[1];
+        int args = arguments(f);
+        // Параметры извлекаются pop в порядке объявления: j-й pop - j-й параметр метода
+        for (int j = 0; j < args; j++)
+            locals.put(code.getA(from + j), j);
+        for (int i = from + args; i < to; i++) {
+            int op = code.getOpcode(i);
+            switch (op) {
+                case ThreeAddressCode.FUNCTION:
+                case ThreeAddressCode.END:
+                case ThreeAddressCode.LABEL:
+                case ThreeAddressCode.GOTO:
+                case ThreeAddressCode.CALL:
+                    continue;
+                case ThreeAddressCode.ASSIGN:
+                    local(locals, code.getA(i));
+                    if (ThreeAddressCode.kind(code.getB(i)) != ThreeAddressCode.CONST)
+                        local(locals, code.getB(i));
+                    break;
+                case ThreeAddressCode.IF_FALSE:
+                case ThreeAddressCode.IF_TRUE:
+                case ThreeAddressCode.POP:
+                case ThreeAddressCode.PUSH:
+                case ThreeAddressCode.RETURN:
+                case ThreeAddressCode.PRINT:
+                    local(locals, code.getA(i));
+                    break;
+                case ThreeAddressCode.NEG:
+                case ThreeAddressCode.NOT:
+                    local(locals, code.getA(i));
+                    local(locals, code.getB(i));
+                    break;
+                default:
+                    local(locals, code.getA(i));
+                    local(locals, code.getB(i));
+                    local(locals, code.getC(i));
+                    break;
+            }
+        }
+        return locals;
+    }
+
+    /**
+     * Добавить локальную переменную для операнда
+     *
+     * @param locals  локальные переменные
+     * @param operand операнд
+     */
+    private static void local(Map<Integer, Integer> locals, int operand) {
+        if (!locals.containsKey(operand))
+            locals.put(operand, locals.size());
+    }
+
+    /**
+     * Генерация атрибута Code метода функции
+     *
+     * @param f     номер функции
+     * @param types типы локальных переменных
+     * @return содержимое атрибута Code
+     * @throws SemanticException код не может быть переведен в байт-код
+     */
+    private byte[] method(int f, int[] types) throws SemanticException {
+        Map<Integer, Integer> locals = locals(f);
+        int from = functionRanges.get(f)[0];
+        int to = functionRanges.get(f)[1];
+        int args = arguments(f);
+        Bytecode out = new Bytecode();
+        Map<Integer, Integer> labels = new HashMap<>();
+        ArrayList<int[]> jumps = new ArrayList<>(); // {позиция команды, метка}
+        // Функция с return, конец которой достижим: return и конец функции
+        // отмечают в поле noValue, было ли возвращено значение
+        boolean partial = checkAssigned(f, locals) && valueFunctions.contains(functionNames.get(f));
+        if (partial)
+            partialFunctions.add(functionNames.get(f));
+        ArrayList<Integer> pushed = new ArrayList<>();
+        int maxPending = 0;
+        for (int i = from + args; i < to; i++) {
+            int op = code.getOpcode(i);
+            int x = code.getA(i);
+            int y = code.getB(i);
+            int z = code.getC(i);
+            switch (op) {
+                case ThreeAddressCode.LABEL:
+                    labels.put(x, out.size());
+                    break;
+                case ThreeAddressCode.GOTO:
+                    jumps.add(new int[] { out.size(), x });
+                    out.u1(GOTO);
+                    out.u2(0);
+                    break;
+                case ThreeAddressCode.IF_FALSE:
+                case ThreeAddressCode.IF_TRUE:
+                    load(out, locals.get(x));
+                    jumps.add(new int[] { out.size(), y });
+                    out.u1(op == ThreeAddressCode.IF_FALSE ? IFEQ : IFNE);
+                    out.u2(0);
+                    break;
+                case ThreeAddressCode.POP:
+                    throw new SemanticException(
+                            String.format("unexpected \"pop\" in function \"%s\"", functionNames.get(f)));
+                case ThreeAddressCode.PUSH:
+                    pushed.add(locals.get(x));
+                    break;
+                case ThreeAddressCode.CALL: {
+                    String callee = code.getName(x);
+                    int calleeIndex = functionNames.indexOf(callee);
+                    if (calleeIndex < 0)
+                        throw new SemanticException(String.format("function \"%s\" not declared", callee));
+                    if (arguments(calleeIndex) != y)
+                        throw new SemanticException(String.format("function \"%s\" waits %d arguments instead of %d",
+                                callee, arguments(calleeIndex), y));
+                    if (pushed.size() < y)
+                        throw new SemanticException(String.format("missing argument of function \"%s\"", callee));
+                    // Аргументы вычисляются и передаются push с последнего, а метод
+                    // получает их в порядке объявления
+                    for (int j = 0; j < y; j++)
+                        load(out, pushed.remove(pushed.size() - 1));
+                    maxPending = Math.max(maxPending, y);
+                    out.u1(INVOKESTATIC);
+                    out.u2(pool.methodRef(CLASS_NAME, callee, descriptor(y)));
+                    out.u1(POP);
+                    break;
+                }
+                case ThreeAddressCode.RETURN:
+                    if (partial) {
+                        out.u1(ICONST_0);
+                        out.u1(PUTSTATIC);
+                        out.u2(pool.fieldRef(CLASS_NAME, NO_VALUE, "Z"));
+                    }
+                    load(out, locals.get(x));
+                    out.u1(IRETURN);
+                    break;
+                case ThreeAddressCode.END:
+                    if (partial) {
+                        out.u1(ICONST_1);
+                        out.u1(PUTSTATIC);
+                        out.u2(pool.fieldRef(CLASS_NAME, NO_VALUE, "Z"));
+                    }
+                    out.u1(ICONST_0);
+                    out.u1(IRETURN);
+                    break;
+                case ThreeAddressCode.PRINT:
+                    out.u1(GETSTATIC);
+                    out.u2(pool.fieldRef("java/lang/System", "out", "Ljava/io/PrintStream;"));
+                    load(out, locals.get(x));
+                    out.u1(INVOKEVIRTUAL);
+                    out.u2(pool.methodRef("java/io/PrintStream", "println",
+                            types[locals.get(x)] == BOOL ? "(Z)V" : "(I)V"));
+                    break;
+                case ThreeAddressCode.ASSIGN:
+                    if (ThreeAddressCode.kind(y) == ThreeAddressCode.CONST) {
+                        Object value = code.getConstant(ThreeAddressCode.index(y));
+                        push(out, value instanceof Boolean ? ((Boolean) value ? 1 : 0) : (Integer) value);
+                    } else
+                        load(out, locals.get(y));
+                    store(out, locals.get(x));
+                    break;
+                case ThreeAddressCode.NEG:
+                    load(out, locals.get(y));
+                    out.u1(INEG);
+                    store(out, locals.get(x));
+                    break;
+                case ThreeAddressCode.NOT:
+                    load(out, locals.get(y));
+                    out.u1(ICONST_1);
+                    out.u1(IXOR);
+                    store(out, locals.get(x));
+                    break;
+                case ThreeAddressCode.ADD:
+                case ThreeAddressCode.SUB:
+                case ThreeAddressCode.MUL:
+                case ThreeAddressCode.DIV:
+                case ThreeAddressCode.AMPAMP:
+                case ThreeAddressCode.BARBAR:
+                    load(out, locals.get(y));
+                    load(out, locals.get(z));
+                    out.u1(arithmetic(op));
+                    store(out, locals.get(x));
+                    break;
+                default:
+                    // Сравнение: if_icmp<op> T; iconst_0; goto E; T: iconst_1; E:
+                    load(out, locals.get(y));
+                    load(out, locals.get(z));
+                    out.u1(comparison(op));
+                    out.u2(7);
+                    out.u1(ICONST_0);
+                    out.u1(GOTO);
+                    out.u2(4);
+                    out.u1(ICONST_1);
+                    store(out, locals.get(x));
+                    break;
+            }
+        }
+        for (int[] jump : jumps) {
+            Integer target = labels.get(jump[1]);
+            if (target == null)
+                throw new SemanticException(String.format("label %d not defined in function \"%s\"", jump[1],
+                        functionNames.get(f)));
+            out.patch(jump[0] + 1, target - jump[0]);
+        }
+        byte[] body = out.toByteArray();
+        if (body.length > 0xFFFF)
+            throw new SemanticException(String.format("function \"%s\" is too large", functionNames.get(f)));
+        Bytecode attribute = new Bytecode();
+        attribute.u2(maxPending + 4);
+        attribute.u2(Math.max(locals.size(), 1));
+        attribute.u4(body.length);
+        attribute.bytes(body);
+        attribute.u2(0); // таблица исключений
+        attribute.u2(0); // атрибуты
+        return attribute.toByteArray();
+    }
+
+    /**
+     * Проверка присваивания локальных переменных до чтения
+     *
+     * Множества присвоенных переменных распространяются по переходам функции и
+     * пересекаются в метках. Недостижимые инструкции не проверяются.
+     *
+     * @param f      номер функции
+     * @param locals номер локальной переменной по операнду
+     * @return true, если конец функции (return без значения) достижим
+     * @throws SemanticException переменная может быть прочитана до присваивания
+     */
+    private boolean checkAssigned(int f, Map<Integer, Integer> locals) throws SemanticException {
+        int from = functionRanges.get(f)[0];
+        int to = functionRanges.get(f)[1];
+        int args = arguments(f);
+        boolean ends = false;
+        Map<Integer, Integer> labels = new HashMap<>();
+        for (int i = from; i < to; i++)
+            if (code.getOpcode(i) == ThreeAddressCode.LABEL)
+                labels.put(code.getA(i), i);
+        BitSet[] assigned = new BitSet[to - from];
+        assigned[args] = new BitSet();
+        assigned[args].set(0, args);
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(from + args);
+        while (!work.isEmpty()) {
+            int i = work.pop();
+            BitSet state = (BitSet) assigned[i - from].clone();
+            int op = code.getOpcode(i);
+            int next = i + 1;
+            int jump = -1;
+            switch (op) {
+                case ThreeAddressCode.LABEL:
+                case ThreeAddressCode.CALL:
+                    break;
+                case ThreeAddressCode.GOTO:
+                    next = -1;
+                    jump = code.getA(i);
+                    break;
+                case ThreeAddressCode.IF_FALSE:
+                case ThreeAddressCode.IF_TRUE:
+                    read(f, locals, state, code.getA(i));
+                    jump = code.getB(i);
+                    break;
+                case ThreeAddressCode.PUSH:
+                case ThreeAddressCode.PRINT:
+                    read(f, locals, state, code.getA(i));
+                    break;
+                case ThreeAddressCode.RETURN:
+                    read(f, locals, state, code.getA(i));
+                    next = -1;
+                    break;
+                case ThreeAddressCode.END:
+                    ends = true;
+                    next = -1;
+                    break;
+                case ThreeAddressCode.POP:
+                    state.set(locals.get(code.getA(i)));
+                    break;
+                case ThreeAddressCode.ASSIGN:
+                    if (ThreeAddressCode.kind(code.getB(i)) != ThreeAddressCode.CONST)
+                        read(f, locals, state, code.getB(i));
+                    state.set(locals.get(code.getA(i)));
+                    break;
+                case ThreeAddressCode.NEG:
+                case ThreeAddressCode.NOT:
+                    read(f, locals, state, code.getB(i));
+                    state.set(locals.get(code.getA(i)));
+                    break;
+                default:
+                    read(f, locals, state, code.getB(i));
+                    read(f, locals, state, code.getC(i));
+                    state.set(locals.get(code.getA(i)));
+                    break;
+            }
+            int[] successors = { next < to ? next : -1, jump < 0 ? -1 : labels.getOrDefault(jump, -1) };
+            for (int successor : successors) {
+                if (successor < 0)
+                    continue;
+                BitSet before = assigned[successor - from];
+                if (before == null)
+                    assigned[successor - from] = (BitSet) state.clone();
+                else {
+                    BitSet merged = (BitSet) before.clone();
+                    merged.and(state);
+                    if (merged.equals(before))
+                        continue;
+                    assigned[successor - from] = merged;
+                }
+                work.push(successor);
+            }
+        }
+        return ends;
+    }
+
+    /**
+     * Проверить, что операнд присвоен
+     *
+     * @param f       номер функции
+     * @param locals  номер локальной переменной по операнду
+     * @param state   присвоенные локальные переменные
+     * @param operand операнд
+     * @throws SemanticException переменная может быть прочитана до присваивания
+     */
+    private void read(int f, Map<Integer, Integer> locals, BitSet state, int operand) throws SemanticException {
+        if (state.get(locals.get(operand)))
+            return;
+        int index = ThreeAddressCode.index(operand);
+        String variable = ThreeAddressCode.kind(operand) == ThreeAddressCode.VAR
+                ? code.getLocalName(code.getB(functionRanges.get(f)[0] - 1), index)
+                : "$E" + index;
+        throw new SemanticException(String.format("variable \"%s\" may be read before assignment in function \"%s\"",
+                variable, functionNames.get(f)));
+    }
+
+    /**
+     * Получить команду арифметической (логической) операции
+     *
+     * @param op код операции трехадресного кода
+     * @return команда JVM
+     */
+    private static int arithmetic(int op) {
+        switch (op) {
+            case ThreeAddressCode.ADD:
+                return IADD;
+            case ThreeAddressCode.SUB:
+                return ISUB;
+            case ThreeAddressCode.MUL:
+                return IMUL;
+            case ThreeAddressCode.DIV:
+                return IDIV;
+            case ThreeAddressCode.AMPAMP:
+                return IAND;
+            default:
+                return IOR;
+        }
+    }
+
+    /**
+     * Получить команду условного перехода операции сравнения
+     *
+     * @param op код операции трехадресного кода
+     * @return команда JVM
+     */
+    private static int comparison(int op) {
+        switch (op) {
+            case ThreeAddressCode.LT:
+                return IF_ICMPLT;
+            case ThreeAddressCode.LTEQ:
+                return IF_ICMPLE;
+            case ThreeAddressCode.GT:
+                return IF_ICMPGT;
+            case ThreeAddressCode.GTEQ:
+                return IF_ICMPGE;
+            case ThreeAddressCode.EQEQ:
+                return IF_ICMPEQ;
+            default:
+                return IF_ICMPNE;
+        }
+    }
+
+    /**
+     * Загрузить целую константу на стек
+     *
+     * @param out   байт-код
+     * @param value значение
+     */
+    private void push(Bytecode out, int value) {
+        if (value >= -1 && value <= 5)
+            out.u1(ICONST_0 + value);
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            out.u1(BIPUSH);
+            out.u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            out.u1(SIPUSH);
+            out.u2(value);
+        } else {
+            out.u1(LDC_W);
+            out.u2(pool.integer(value));
+        }
+    }
+
+    /**
+     * Загрузить локальную переменную на стек
+     *
+     * @param out   байт-код
+     * @param local номер локальной переменной
+     */
+    private static void load(Bytecode out, int local) {
+        localInstruction(out, ILOAD, local);
+    }
+
+    /**
+     * Сохранить значение стека в локальную переменную
+     *
+     * @param out   байт-код
+     * @param local номер локальной переменной
+     */
+    private static void store(Bytecode out, int local) {
+        localInstruction(out, ISTORE, local);
+    }
+
+    /**
+     * Команда с номером локальной переменной (iload/istore)
+     *
+     * @param out         байт-код
+     * @param instruction команда
+     * @param local       номер локальной переменной
+     */
+    private static void localInstruction(Bytecode out, int instruction, int local) {
+        if (local > 0xFF) {
+            out.u1(0xc4); // wide
+            out.u1(instruction);
+            out.u2(local);
+        } else {
+            out.u1(instruction);
+            out.u1(local);
+        }
+    }
+
+    /**
+     * Буфер байт-кода
+     */
+    private static class Bytecode {
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void u1(int value) {
+            if (size == bytes.length)
+                bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        void u4(int value) {
+            u2(value >> 16);
+            u2(value);
+        }
+
+        void bytes(byte[] values) {
+            for (byte value : values)
+                u1(value);
+        }
+
+        void patch(int position, int value) {
+            bytes[position] = (byte) (value >> 8);
+            bytes[position + 1] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * Пул констант файла класса
+     */
+    private static class ConstantPool {
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private DataOutputStream out = new DataOutputStream(bytes);
+        private Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            return entry("U" + value, 1, () -> out.writeUTF(value));
+        }
+
+        int integer(int value) {
+            return entry("I" + value, 3, () -> out.writeInt(value));
+        }
+
+        int classInfo(String name) {
+            int utf8 = utf8(name);
+            return entry("C" + name, 7, () -> out.writeShort(utf8));
+        }
+
+        int nameAndType(String name, String descriptor) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            return entry("N" + name + ":" + descriptor, 12, () -> {
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return ref(9, owner, name, descriptor);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return ref(10, owner, name, descriptor);
+        }
+
+        private int ref(int tag, String owner, String name, String descriptor) {
+            int ownerIndex = classInfo(owner);
+            int nameAndTypeIndex = nameAndType(name, descriptor);
+            return entry("R" + tag + owner + "." + name + ":" + descriptor, tag, () -> {
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndTypeIndex);
+            });
+        }
+
+        private int entry(String key, int tag, Writer writer) {
+            Integer index = entries.get(key);
+            if (index != null)
+                return index;
+            try {
+                out.writeByte(tag);
+                writer.write();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            entries.put(key, count);
+            return count++;
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            out.flush();
+            bytes.writeTo(target);
+        }
+
+        private interface Writer {
+            void write() throws IOException;
+        }
+    }
+}
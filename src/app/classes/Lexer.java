@@ -1,56 +1,162 @@
 package app.classes;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import app.classes.exceptions.LexicalException;
 
 /**
  * Класс лексического анализа
+ * 
+ * Символы классифицируются по таблице классов ASCII, а операторы, числа,
+ * слова и комментарии распознаются детерминированным автоматом по таблице
+ * переходов за один проход (самое длинное совпадение). Токены записываются в
+ * компактное хранилище {@link TokenBuffer}, имена заменяются номерами символов.
+ * 
+ * Файл можно разбирать без декодирования: он отображается в память и читается
+ * побайтно через {@link ByteSequence}, декодируется только содержимое строк и
+ * комментариев.
  */
 public class Lexer {
-    // Используемые символы
-    private static final String operators = "+-*/(){}=<>!&|";
-    private static final String letters = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
-    private static final String digits = "0123456789";
-    // Используемые операторы
-    private static final Map<String, Token.Type> operatorsMap;
+    // Классы символов
+    private static final int C_OTHER = 0;
+    private static final int C_BLANK = 1; // ' '
+    private static final int C_CONTROL = 2; // '\r', '\t', '\0'
+    private static final int C_NEWLINE = 3; // '\n'
+    private static final int C_DIGIT = 4;
+    private static final int C_LETTER = 5;
+    private static final int C_QUOTE = 6;
+    private static final int C_PLUS = 7;
+    private static final int C_MINUS = 8;
+    private static final int C_STAR = 9;
+    private static final int C_SLASH = 10;
+    private static final int C_LPAREN = 11;
+    private static final int C_RPAREN = 12;
+    private static final int C_LBRACE = 13;
+    private static final int C_RBRACE = 14;
+    private static final int C_EQ = 15;
+    private static final int C_LT = 16;
+    private static final int C_GT = 17;
+    private static final int C_EXCL = 18;
+    private static final int C_AMP = 19;
+    private static final int C_BAR = 20;
+    private static final int CLASSES = 21;
+    // Состояния автомата
+    private static final int S_DEAD = -1;
+    private static final int S_START = 0;
+    private static final int S_INT = 1;
+    private static final int S_WORD = 2; // только буквы
+    private static final int S_WORD_DIGITS = 3; // буквы и цифры
+    private static final int S_COMMENT = 4;
+    private static final int S_PLUS = 5;
+    private static final int S_MINUS = 6;
+    private static final int S_STAR = 7;
+    private static final int S_SLASH = 8;
+    private static final int S_LPAREN = 9;
+    private static final int S_RPAREN = 10;
+    private static final int S_LBRACE = 11;
+    private static final int S_RBRACE = 12;
+    private static final int S_EQ = 13;
+    private static final int S_LT = 14;
+    private static final int S_GT = 15;
+    private static final int S_EXCL = 16;
+    private static final int S_AMP = 17; // одиночный & недопустим
+    private static final int S_BAR = 18; // одиночный | недопустим
+    private static final int S_EQEQ = 19;
+    private static final int S_EXCLEQ = 20;
+    private static final int S_LTEQ = 21;
+    private static final int S_GTEQ = 22;
+    private static final int S_AMPAMP = 23;
+    private static final int S_BARBAR = 24;
+    private static final int STATES = 25;
+    // Таблицы
+    private static final byte[] classes = new byte[128];
+    private static final byte[] transitions = new byte[STATES * CLASSES];
+    private static final Token.Type[] accepted = new Token.Type[STATES];
+    // Ключевые слова (номер символа ключевого слова совпадает с индексом)
+    private static final String[] keywords = { "print", "if", "else", "while", "do", "def", "return", "struct" };
+    private static final Token.Type[] keywordsTypes = { Token.Type.PRINT, Token.Type.IF, Token.Type.ELSE,
+            Token.Type.WHILE, Token.Type.DO, Token.Type.DEF, Token.Type.RETURN, Token.Type.STRUCT };
     static {
-        operatorsMap = new HashMap<>();
-        // Арифметические
-        operatorsMap.put("+", Token.Type.PLUS);
-        operatorsMap.put("-", Token.Type.MINUS);
-        operatorsMap.put("*", Token.Type.STAR);
-        operatorsMap.put("/", Token.Type.SLASH);
-        // Присвоения
-        operatorsMap.put("=", Token.Type.EQ);
-        // Выражения
-        operatorsMap.put("{", Token.Type.LBRACE);
-        operatorsMap.put("}", Token.Type.RBRACE);
-        operatorsMap.put("(", Token.Type.LPAREN);
-        operatorsMap.put(")", Token.Type.RPAREN);
-        // Сравнения
-        operatorsMap.put("<", Token.Type.LT);
-        operatorsMap.put(">", Token.Type.GT);
-        operatorsMap.put("==", Token.Type.EQEQ);
-        operatorsMap.put("!=", Token.Type.EXCLEQ);
-        operatorsMap.put("<=", Token.Type.LTEQ);
-        operatorsMap.put(">=", Token.Type.GTEQ);
-        // Логические
-        operatorsMap.put("&&", Token.Type.AMPAMP);
-        operatorsMap.put("||", Token.Type.BARBAR);
-        operatorsMap.put("!", Token.Type.EXCL);
+        for (char c = 'A'; c <= 'Z'; c++)
+            classes[c] = C_LETTER;
+        for (char c = 'a'; c <= 'z'; c++)
+            classes[c] = C_LETTER;
+        for (char c = '0'; c <= '9'; c++)
+            classes[c] = C_DIGIT;
+        classes[' '] = C_BLANK;
+        classes['\r'] = C_CONTROL;
+        classes['\t'] = C_CONTROL;
+        classes['\0'] = C_CONTROL;
+        classes['\n'] = C_NEWLINE;
+        classes['"'] = C_QUOTE;
+        classes['+'] = C_PLUS;
+        classes['-'] = C_MINUS;
+        classes['*'] = C_STAR;
+        classes['/'] = C_SLASH;
+        classes['('] = C_LPAREN;
+        classes[')'] = C_RPAREN;
+        classes['{'] = C_LBRACE;
+        classes['}'] = C_RBRACE;
+        classes['='] = C_EQ;
+        classes['<'] = C_LT;
+        classes['>'] = C_GT;
+        classes['!'] = C_EXCL;
+        classes['&'] = C_AMP;
+        classes['|'] = C_BAR;
+
+        Arrays.fill(transitions, (byte) S_DEAD);
+        // Числа и слова
+        transition(S_START, C_DIGIT, S_INT);
+        transition(S_INT, C_DIGIT, S_INT);
+        transition(S_START, C_LETTER, S_WORD);
+        transition(S_WORD, C_LETTER, S_WORD);
+        transition(S_WORD, C_DIGIT, S_WORD_DIGITS);
+        transition(S_WORD_DIGITS, C_LETTER, S_WORD_DIGITS);
+        transition(S_WORD_DIGITS, C_DIGIT, S_WORD_DIGITS);
+        // Операторы
+        operator(C_PLUS, S_PLUS, Token.Type.PLUS);
+        operator(C_MINUS, S_MINUS, Token.Type.MINUS);
+        operator(C_STAR, S_STAR, Token.Type.STAR);
+        operator(C_SLASH, S_SLASH, Token.Type.SLASH);
+        operator(C_LPAREN, S_LPAREN, Token.Type.LPAREN);
+        operator(C_RPAREN, S_RPAREN, Token.Type.RPAREN);
+        operator(C_LBRACE, S_LBRACE, Token.Type.LBRACE);
+        operator(C_RBRACE, S_RBRACE, Token.Type.RBRACE);
+        operator(C_EQ, S_EQ, Token.Type.EQ);
+        operator(C_LT, S_LT, Token.Type.LT);
+        operator(C_GT, S_GT, Token.Type.GT);
+        operator(C_EXCL, S_EXCL, Token.Type.EXCL);
+        operator(C_AMP, S_AMP, null);
+        operator(C_BAR, S_BAR, null);
+        operator(S_EQ, C_EQ, S_EQEQ, Token.Type.EQEQ);
+        operator(S_EXCL, C_EQ, S_EXCLEQ, Token.Type.EXCLEQ);
+        operator(S_LT, C_EQ, S_LTEQ, Token.Type.LTEQ);
+        operator(S_GT, C_EQ, S_GTEQ, Token.Type.GTEQ);
+        operator(S_AMP, C_AMP, S_AMPAMP, Token.Type.AMPAMP);
+        operator(S_BAR, C_BAR, S_BARBAR, Token.Type.BARBAR);
+        // Комментарий // до '\r', '\n', '\t' или '\0'
+        transition(S_SLASH, C_SLASH, S_COMMENT);
+        for (int c = 0; c < CLASSES; c++)
+            if (c != C_CONTROL && c != C_NEWLINE)
+                transition(S_COMMENT, c, S_COMMENT);
+        accepted[S_INT] = Token.Type.INT;
+        accepted[S_WORD] = Token.Type.VAR;
+        accepted[S_WORD_DIGITS] = Token.Type.VAR;
+        accepted[S_COMMENT] = Token.Type.COMMENT;
     }
     // Поля
-    private String input;
+    private CharSequence input;
     private int length;
     // Перменные
     private int line = 1;
     private int pos = 0;
     private int globalPos;
-    private List<Token> tokens = new ArrayList<>();
+    private TokenBuffer buffer;
+    private boolean comments = true;
+    private List<Token> tokens;
 
     /**
      * Конструктор
@@ -58,10 +164,211 @@ public class Lexer {
      * @param input входной поток
      * @throws LexicalException лексическая ошибка
      */
-    public Lexer(String input) throws LexicalException {
+    public Lexer(CharSequence input) throws LexicalException {
+        this(input, true);
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param input    входной поток
+     * @param comments хранить ли комментарии в таблице trivia (иначе они только
+     *                 пропускаются)
+     * @throws LexicalException лексическая ошибка
+     */
+    public Lexer(CharSequence input, boolean comments) throws LexicalException {
+        this(input, new TokenBuffer(input));
+        this.comments = comments;
+        tokenize();
+    }
+
+    /**
+     * Конструктор (файл отображается в память и разбирается побайтно, UTF-8)
+     * 
+     * @param channel канал файла (не больше 2 ГБ); после создания лексера канал
+     *                можно закрыть
+     * @throws IOException      ошибка отображения файла
+     * @throws LexicalException лексическая ошибка
+     */
+    public Lexer(FileChannel channel) throws IOException, LexicalException {
+        this(new ByteSequence(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+    }
+
+    /**
+     * Конструктор без токенизации (для лексеров, читающих вход по частям)
+     * 
+     * @param input  входной поток (доступ по абсолютной позиции)
+     * @param buffer хранилище токенов и символов имен
+     */
+    protected Lexer(CharSequence input, TokenBuffer buffer) {
         this.input = input;
         this.length = input.length();
-        tokenize();
+        this.buffer = buffer;
+        for (String keyword : keywords)
+            buffer.symbol(keyword);
+    }
+
+    /**
+     * Задать переход автомата
+     * 
+     * @param from  исходное состояние
+     * @param c     класс символа
+     * @param to    новое состояние
+     */
+    private static void transition(int from, int c, int to) {
+        transitions[from * CLASSES + c] = (byte) to;
+    }
+
+    /**
+     * Задать оператор из одного символа
+     * 
+     * @param c     класс символа
+     * @param state состояние
+     * @param type  тип токена или null, если оператор недопустим
+     */
+    private static void operator(int c, int state, Token.Type type) {
+        operator(S_START, c, state, type);
+    }
+
+    /**
+     * Задать оператор
+     * 
+     * @param from  исходное состояние
+     * @param c     класс символа
+     * @param state состояние
+     * @param type  тип токена или null, если оператор недопустим
+     */
+    private static void operator(int from, int c, int state, Token.Type type) {
+        transition(from, c, state);
+        accepted[state] = type;
+    }
+
+    /**
+     * Можно ли начать разбор с позиции так, чтобы токены совпали с разбором
+     * всего входа: позиция - начало строки, и перенос перед ней не может
+     * оказаться внутри строкового литерала (строка продолжается через перенос
+     * сразу после открывающей кавычки, после \ и после escape-пары)
+     * 
+     * @param input    входной поток
+     * @param position позиция
+     * @return true или false
+     */
+    static boolean isRestartPoint(CharSequence input, int position) {
+        if (position == 0)
+            return true;
+        if (input.charAt(position - 1) != '\n')
+            return false;
+        if (position < 2)
+            return true;
+        final char last = input.charAt(position - 2);
+        if (last == '\\' || last == '"')
+            return false;
+        return !(position >= 3 && (last == 'n' || last == 't') && input.charAt(position - 3) == '\\');
+    }
+
+    /**
+     * Достигнут ли конец входа
+     * 
+     * @param position абсолютная позиция
+     * @return true, если символа на позиции нет
+     */
+    protected boolean isEnd(int position) {
+        return position >= length;
+    }
+
+    /**
+     * Получить положение каретки
+     * 
+     * @return абсолютная позиция
+     */
+    protected int getPosition() {
+        return globalPos;
+    }
+
+    /**
+     * Получить текущую строку
+     * 
+     * @return номер строки
+     */
+    protected int getLine() {
+        return line;
+    }
+
+    /**
+     * Добавить токен
+     * 
+     * @param type      тип токена
+     * @param from      начало содержимого
+     * @param to        конец содержимого
+     * @param tokenLine строка токена
+     * @param tokenPos  позиция токена в строке
+     * @param symbol    номер символа имени или -1
+     */
+    protected void addToken(Token.Type type, int from, int to, int tokenLine, int tokenPos, int symbol) {
+        buffer.add(type, from, to, tokenLine, tokenPos, symbol);
+    }
+
+    /**
+     * Пересчет позиции в строке после части входа, пройденной по байтам (при
+     * побайтном разборе символ UTF-8 занимает несколько байтов)
+     * 
+     * @param from начало
+     * @param to   конец
+     */
+    private void alignPosition(int from, int to) {
+        if (!(input instanceof ByteSequence))
+            return;
+        // Позиция считается только с начала последней строки
+        for (int i = to - 1; i >= from; i--)
+            if (input.charAt(i) == '\n') {
+                from = i + 1;
+                break;
+            }
+        pos += ((ByteSequence) input).columns(from, to) - (to - from);
+    }
+
+    /**
+     * Добавить комментарий в таблицу trivia (в последовательность токенов
+     * комментарии не попадают)
+     * 
+     * @param from      начало содержимого (после //)
+     * @param to        конец содержимого
+     * @param tokenLine строка комментария
+     * @param tokenPos  позиция комментария в строке
+     */
+    protected void addTrivia(int from, int to, int tokenLine, int tokenPos) {
+        if (comments)
+            buffer.addTrivia(from, to, tokenLine, tokenPos);
+    }
+
+    /**
+     * Совпадение части входа со словом
+     * 
+     * @param from начало
+     * @param to   конец
+     * @param word слово
+     * @return true или false
+     */
+    private boolean matches(int from, int to, String word) {
+        if (to - from != word.length())
+            return false;
+        for (int i = 0; i < word.length(); i++)
+            if (input.charAt(from + i) != word.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Получить класс символа
+     * 
+     * @param position абсолютная позиция
+     * @return класс символа (за концом входа - как у '\0')
+     */
+    private int classAt(int position) {
+        if (isEnd(position))
+            return C_CONTROL;
+        final char c = input.charAt(position);
+        return c < 128 ? classes[c] : C_OTHER;
     }
 
     /**
@@ -73,11 +380,26 @@ public class Lexer {
      */
     private char peek(int relativePosition) {
         final int position = globalPos + relativePosition;
-        if (position >= length)
+        if (isEnd(position))
             return '\0';
         return input.charAt(position);
     }
 
+    /**
+     * Получить символ для сообщения об ошибке: байтовый вход декодируется, чтобы
+     * сообщение совпадало с разбором декодированного текста
+     * 
+     * @param position позиция в тексте
+     * @return символ
+     */
+    private char symbolAt(int position) {
+        if (isEnd(position))
+            return '\0';
+        if (input instanceof ByteSequence)
+            return ((ByteSequence) input).decodeAt(position);
+        return input.charAt(position);
+    }
+
     /**
      * Смещение каретки вперед
      * 
@@ -86,172 +408,97 @@ public class Lexer {
     private char next() {
         globalPos++;
         pos++;
-        if ("\n".indexOf(peek(0)) != -1) {
+        final char current = peek(0);
+        if (current == '\n') {
             line++;
             pos = 0;
         }
-        return peek(0);
-    }
-
-    /**
-     * Токенизация int
-     */
-    private void tokenizeInt() {
-        final StringBuilder buffer = new StringBuilder();
-        char current = peek(0);
-        while (true) {
-            // Символ - не цифра?
-            if (digits.indexOf(current) == -1)
-                break;
-            buffer.append(current);
-            current = next();
-        }
-        tokens.add(new Token(Token.Type.INT, buffer.toString(), line, pos));
+        return current;
     }
 
     /**
-     * Токенизация комментария
+     * Перемещение каретки с from до to, не содержащих переходов на строку, кроме,
+     * возможно, символа на to
+     * 
+     * @param from абсолютная позиция начала
+     * @param to   абсолютная позиция конца
      */
-    private void tokenizeComment() {
-        final StringBuilder buffer = new StringBuilder();
-        char current = peek(0);
-        while ("\r\n\t\0".indexOf(current) == -1) {
-            buffer.append(current);
-            current = next();
+    private void advance(int from, int to) {
+        globalPos = to;
+        pos += to - from;
+        if (to > from && !isEnd(to) && input.charAt(to) == '\n') {
+            line++;
+            pos = 0;
         }
-        tokens.add(new Token(Token.Type.COMMENT, buffer.toString(), line, pos));
     }
 
     /**
-     * Токенизация оператора
+     * Токенизация числа, слова, оператора или комментария по таблице переходов
      * 
+     * @param c класс первого символа
      * @throws LexicalException лексическая ошибка
      */
-    private void tokenizeOperator() throws LexicalException {
-        char current = peek(0);
-        if (current == '/') {
-            if (peek(1) == '/') {
-                next();
-                next();
-                tokenizeComment();
-                return;
-            }
-        }
-        else if (current == '&') {
-            if (peek(1) == '&') {
-                next();
-                next();
-                tokens.add(new Token(operatorsMap.get("&&"), "&&", line, pos));
-                return;
-            }
-        }
-        else if (current == '|') {
-            if (peek(1) == '|') {
-                next();
-                next();
-                tokens.add(new Token(operatorsMap.get("||"), "||", line, pos));
-                return;
-            }
-        }
-        else if (current == '=') {
-            if (peek(1) == '=') {
-                next();
-                next();
-                tokens.add(new Token(operatorsMap.get("=="), "==", line, pos));
-                return;
-            }
-        }
-        else if (current == '!') {
-            if (peek(1) == '=') {
-                next();
-                next();
-                tokens.add(new Token(operatorsMap.get("!="), "!=", line, pos));
-                return;
-            }
-        }
-        final StringBuilder buffer = new StringBuilder();
-        while (true) {
-            final String text = buffer.toString();
-            if (!operatorsMap.containsKey(text + current)) {
-                if (!text.isEmpty()) {
-                    tokens.add(new Token(operatorsMap.get(text), text, line, pos));
-                    return;
-                } else
-                    throw new LexicalException(String.format("Unidentified symbol \"%s\" of operator: string %d, position %d\n%s",
-                        current, line, pos, printTokens()));
-            }
-            buffer.append(current);
-            current = next();
-        }
-    }
-
-    /**
-     * Токенизация ключевого слова
-     */
-    private void tokenizeKeyword() {
-        final StringBuilder buffer = new StringBuilder();
-        char current = peek(0);
+    private void tokenizeState(int c) throws LexicalException {
+        final int start = globalPos;
+        int state = transitions[S_START * CLASSES + c];
+        int end = start + 1;
         while (true) {
-            if ((letters.indexOf(current) == -1) && (digits.indexOf(current) == -1)) {
+            final int next = transitions[state * CLASSES + classAt(end)];
+            if (next == S_DEAD)
                 break;
-            }
-            buffer.append(current);
-            current = next();
+            state = next;
+            end++;
         }
-        final String keyword = buffer.toString();
-        Token.Type keywordType = null;
-        switch (keyword) {
-            case "print":
-                keywordType = Token.Type.PRINT;
-                break;
-            case "if":
-                keywordType = Token.Type.IF;
-                break;
-            case "else":
-                keywordType = Token.Type.ELSE;
-                break;
-            case "while":
-                keywordType = Token.Type.WHILE;
+        final Token.Type type = accepted[state];
+        if (type == null)
+            throw error(start, "Unidentified symbol \"%s\" of operator", symbolAt(start));
+        switch (state) {
+            case S_INT:
+                advance(start, end);
+                addToken(type, start, end, line, pos, -1);
                 break;
-            case "do":
-                keywordType = Token.Type.DO;
+            case S_COMMENT:
+                alignPosition(start, end);
+                advance(start, end);
+                addTrivia(start + 2, end, line, pos);
                 break;
-            case "def":
-                keywordType = Token.Type.DEF;
-                break;
-            case "return":
-                keywordType = Token.Type.RETURN;
-                break;
-            case "struct":
-                keywordType = Token.Type.STRUCT;
+            case S_WORD:
+            case S_WORD_DIGITS:
+                tokenizeWord(start, end);
                 break;
             default:
-                keywordType = Token.Type.VAR;
+                advance(start, end);
+                addToken(type, start, end, line, pos, -1);
                 break;
         }
-        tokens.add(new Token(keywordType, keyword, line, pos));
     }
 
     /**
-     * Токенизация boolean
+     * Токенизация ключевого слова, переменной или boolean
+     * 
+     * Слово на t или f сначала читается как boolean (только буквы) и, если это не
+     * true или false, читается заново с того же начала - при этом позиция
+     * каретки сдвигается на длину буквенной части дважды, как и раньше.
+     * 
+     * @param start абсолютная позиция начала слова
+     * @param end   абсолютная позиция конца слова
      */
-    private void tokenizeBool() {
-        final StringBuilder buffer = new StringBuilder();
-        int startPos = globalPos;
-        char current = peek(0);
-        while (true) {
-            if (letters.indexOf(current) == -1) {
-                break;
+    private void tokenizeWord(int start, int end) {
+        final char first = input.charAt(start);
+        if (first == 't' || first == 'f') {
+            int letters = start + 1;
+            while (letters < end && classAt(letters) == C_LETTER)
+                letters++;
+            advance(start, letters);
+            if (matches(start, letters, "true") || matches(start, letters, "false")) {
+                addToken(Token.Type.BOOL, start, letters, line, pos, -1);
+                return;
             }
-            buffer.append(current);
-            current = next();
         }
-        String boolStr = buffer.toString();
-        if (!boolStr.equals("true") && !boolStr.equals("false")) {
-            globalPos = startPos;
-            tokenizeKeyword();
-        } else
-            tokens.add(new Token(Token.Type.BOOL, boolStr, line, pos));
+        advance(start, end);
+        final int keyword = buffer.symbol(input, start, end);
+        final Token.Type keywordType = keyword < keywords.length ? keywordsTypes[keyword] : Token.Type.VAR;
+        addToken(keywordType, start, end, line, pos, keyword);
     }
 
     /**
@@ -261,39 +508,34 @@ public class Lexer {
      */
     private void tokenizeString() throws LexicalException {
         next(); // Пропускаем открывающую "
-        final StringBuilder buffer = new StringBuilder();
+        final int start = globalPos;
         char current = peek(0);
         while (true) {
             if (current == '\\') {
                 current = next();
                 switch (current) {
                     case '"':
-                        current = next();
-                        buffer.append('"');
-                        continue;
                     case 'n':
-                        current = next();
-                        buffer.append('\n');
-                        continue;
                     case 't':
                         current = next();
-                        buffer.append('\t');
-                        continue;
                 }
-                buffer.append('\\');
                 continue;
             }
             if (current == '"')
                 break;
-            else if ("\n\0".indexOf(peek(1)) != -1)
-                throw new LexicalException(String.format("Waited closing quote: string %d, position %d\n%s",
-                    line, pos, printTokens()));
-            buffer.append(current);
+            final char following = peek(1);
+            if (following == '\n' || following == '\0') {
+                alignPosition(start, isEnd(globalPos) ? globalPos : globalPos + 1);
+                throw error(isEnd(globalPos) ? globalPos : globalPos + 1, "Waited closing quote");
+            }
             current = next();
         }
+        final int end = globalPos;
+        alignPosition(start, end);
         next(); // Пропускаем закрывающую "
 
-        tokens.add(new Token(Token.Type.STRING, buffer.toString(), line, pos));
+        // Escape-последовательности раскрываются при получении содержимого токена
+        addToken(Token.Type.STRING, start, end, line, pos, -1);
     }
 
     /**
@@ -303,32 +545,37 @@ public class Lexer {
      * @throws LexicalException лексическая ошибка
      */
     private List<Token> tokenize() throws LexicalException {
-        while (globalPos < length) {
-            final char current = peek(0);
-            // Текущий символ - цифра?
-            if (digits.indexOf(current) != -1)
-                tokenizeInt();
-            // Текущий символ - оператор?
-            else if (operators.indexOf(current) != -1)
-                tokenizeOperator();
-            // Текущий символ - буква?
-            else if (letters.indexOf(current) != -1) {
-                if (current == 't' || current == 'f')
-                    tokenizeBool();
-                else
-                    tokenizeKeyword();
-            }
-            // Текущий символ - " ?
-            else if (current == '"')
-                tokenizeString();
+        while (!isEnd(globalPos))
+            step();
+        return tokens;
+    }
+
+    /**
+     * Шаг токенизации: пропуск одного пробельного символа или чтение одного
+     * токена
+     * 
+     * @throws LexicalException лексическая ошибка
+     */
+    protected void step() throws LexicalException {
+        final int c = classAt(globalPos);
+        switch (c) {
             // Текущий символ - пробел или переход на строку?
-            else if ("\r\n\t\0 ".indexOf(current) != -1)
+            case C_BLANK:
+            case C_CONTROL:
+            case C_NEWLINE:
                 next();
-            else
-                throw new LexicalException(String.format("Unidentified symbol \"%s\": string %d, position %d\n%s",
-                    current, line, pos, printTokens()));
+                break;
+            // Текущий символ - " ?
+            case C_QUOTE:
+                tokenizeString();
+                break;
+            case C_OTHER:
+                throw error(globalPos, "Unidentified symbol \"%s\"", symbolAt(globalPos));
+            // Число, слово, оператор или комментарий
+            default:
+                tokenizeState(c);
+                break;
         }
-        return tokens;
     }
 
     /**
@@ -337,19 +584,50 @@ public class Lexer {
      * @return список токенов
      */
     public List<Token> getTokens() {
+        if (tokens == null)
+            tokens = buffer.toList();
         return tokens;
     }
 
     /**
-     * Вывод токенов в консоль
+     * Получить компактное хранилище токенов
+     * 
+     * @return хранилище токенов
+     */
+    public TokenBuffer getTokenBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Вывод токенов в консоль (вместе с комментариями из таблицы trivia)
      * 
      * @return возвращает список токенов
      */
     public String printTokens() {
-        String result = "";
-        if (tokens.size() != 0)
-            for (Token t : tokens)
-                result += t.toString() + '\n';
-        return result;
+        final StringBuilder result = new StringBuilder();
+        int comment = 0;
+        for (int i = 0; i <= buffer.size(); i++) {
+            // Комментарии печатаются перед токеном, за которым они следуют
+            for (; comment < buffer.getTriviaCount() && buffer.getTriviaOwner(comment) == i; comment++)
+                result.append(Token.Type.COMMENT).append(' ').append(buffer.getTriviaText(comment)).append('\n');
+            if (i < buffer.size())
+                result.append(buffer.getType(i)).append(' ').append(buffer.getText(i)).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Создать лексическую ошибку в текущем положении (строка ошибки и фрагмент
+     * исходного текста строятся только при чтении сообщения)
+     * 
+     * @param offset место ошибки в исходном тексте
+     * @param format шаблон сообщения
+     * @param args   аргументы шаблона
+     * @return исключение
+     */
+    protected LexicalException error(int offset, String format, Object... args) {
+        final Diagnostic diagnostic = new Diagnostic(Diagnostic.Kind.LEXICAL, line, pos, format, args);
+        diagnostic.setSource(input, offset);
+        return new LexicalException(diagnostic);
     }
 }
\ No newline at end of file
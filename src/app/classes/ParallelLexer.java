@@ -0,0 +1,147 @@
+package app.classes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import app.classes.exceptions.LexicalException;
+
+/**
+ * Класс параллельного лексического анализа
+ * 
+ * Вход делится на части по началам строк, начинающихся с def (функции
+ * верхнего уровня), части разбираются отдельными лексерами в
+ * {@link ForkJoinPool}, а их токены склеиваются в общее хранилище с
+ * пересчетом позиций, строк и символов имен. Токены и их положения совпадают с
+ * разбором {@link Lexer}. Если в какой-либо части найдена лексическая ошибка,
+ * вход разбирается заново последовательно, чтобы сообщение об ошибке было тем
+ * же, что у {@link Lexer}.
+ */
+public class ParallelLexer extends Lexer {
+    // Свойства
+    private static final int MIN_CHUNK = 1 << 16;
+    private CharSequence input;
+
+    /**
+     * Конструктор (общий пул, части не меньше 64 КБ)
+     * 
+     * @param input входной поток
+     * @throws LexicalException лексическая ошибка
+     */
+    public ParallelLexer(CharSequence input) throws LexicalException {
+        this(input, ForkJoinPool.commonPool(),
+                Math.min(ForkJoinPool.commonPool().getParallelism() * 4, input.length() / MIN_CHUNK));
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param input  входной поток
+     * @param pool   пул потоков
+     * @param chunks желаемое количество частей
+     * @throws LexicalException лексическая ошибка
+     */
+    public ParallelLexer(CharSequence input, ForkJoinPool pool, int chunks) throws LexicalException {
+        super(input, new TokenBuffer(input));
+        this.input = input;
+        final List<Integer> bounds = split(Math.max(chunks, 1));
+        final List<ForkJoinTask<Lexer>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            final CharSequence chunk = slice(bounds.get(i), bounds.get(i + 1));
+            tasks.add(pool.submit(() -> {
+                try {
+                    return new Lexer(chunk);
+                } catch (LexicalException ex) {
+                    return null;
+                }
+            }));
+        }
+        final List<Lexer> lexers = new ArrayList<>();
+        for (ForkJoinTask<Lexer> task : tasks)
+            lexers.add(task.join());
+        if (lexers.contains(null)) {
+            while (!isEnd(getPosition()))
+                step();
+            return;
+        }
+        int lineOffset = 0;
+        for (int i = 0; i < lexers.size(); i++) {
+            append(lexers.get(i), bounds.get(i), lineOffset, i > 0);
+            lineOffset += lexers.get(i).getLine() - 1;
+        }
+    }
+
+    /**
+     * Найти границы частей: начала строк с def, перенос перед которыми не
+     * может оказаться внутри строки (комментарий заканчивается на переносе)
+     * 
+     * @param chunks желаемое количество частей
+     * @return начала частей и конец входа
+     */
+    private List<Integer> split(int chunks) {
+        final int length = input.length();
+        final List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        for (int i = 1; i < chunks; i++) {
+            int position = Math.max((int) ((long) length * i / chunks), bounds.get(bounds.size() - 1) + 1);
+            while (position < length && !isSafe(position))
+                position++;
+            if (position >= length)
+                break;
+            bounds.add(position);
+        }
+        bounds.add(length);
+        return bounds;
+    }
+
+    /**
+     * Можно ли начать часть с позиции
+     * 
+     * @param position позиция
+     * @return true, если с позиции начинается строка с def
+     */
+    private boolean isSafe(int position) {
+        if (position < 2 || !isRestartPoint(input, position))
+            return false;
+        if (position + 3 > input.length() || input.charAt(position) != 'd' || input.charAt(position + 1) != 'e'
+                || input.charAt(position + 2) != 'f')
+            return false;
+        if (position + 3 == input.length())
+            return true;
+        final char following = input.charAt(position + 3);
+        return !Character.isLetterOrDigit(following);
+    }
+
+    /**
+     * Получить часть входа (байты отображенного файла не декодируются)
+     * 
+     * @param from начало
+     * @param to   конец
+     * @return часть входа
+     */
+    private CharSequence slice(int from, int to) {
+        if (input instanceof ByteSequence)
+            return ((ByteSequence) input).slice(from, to);
+        return input.subSequence(from, to);
+    }
+
+    /**
+     * Добавить токены части
+     * 
+     * @param lexer      лексер части
+     * @param from       начало части во входе
+     * @param lineOffset количество строк до части
+     * @param lineStart  часть начинается с начала строки (позиции первой строки
+     *                   части сдвигаются на перенос, с которого их отсчитывает
+     *                   последовательный лексер)
+     */
+    private void append(Lexer lexer, int from, int lineOffset, boolean lineStart) {
+        final TokenBuffer chunk = lexer.getTokenBuffer();
+        final TokenBuffer buffer = getTokenBuffer();
+        final int[] symbols = new int[chunk.getSymbolsCount()];
+        for (int i = 0; i < symbols.length; i++)
+            symbols[i] = buffer.symbol(chunk.getName(i));
+        buffer.append(chunk, from, lineOffset, lineStart ? 1 : 0, symbols);
+    }
+}
\ No newline at end of file
@@ -2,22 +2,57 @@ package app.classes;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import app.classes.exceptions.LexicalException;
 import app.classes.exceptions.SemanticException;
 import app.classes.exceptions.SyntaxException;
+import app.classes.exceptions.UncheckedLexicalException;
 
 public class Parser {
+    /**
+     * Перечисление режимов разбора
+     */
+    public static enum Mode {
+        // Вычисление значений при разборе (тело цикла разбирается на каждой итерации)
+        EVALUATE,
+        // Компиляция (каждый цикл разбирается один раз и сводится к меткам и переходам)
+        COMPILE
+    }
+    // Свойства
+    // Приоритеты бинарных операций (0 - токен не является бинарной операцией)
+    private static final int[] PRECEDENCE = new int[Token.Type.values().length];
+    private static final String[] OPERATIONS = new String[Token.Type.values().length];
+    static {
+        operation(Token.Type.BARBAR, 1, "||");
+        operation(Token.Type.AMPAMP, 2, "&&");
+        operation(Token.Type.EQEQ, 3, "==");
+        operation(Token.Type.EXCLEQ, 3, "!=");
+        operation(Token.Type.GT, 4, ">");
+        operation(Token.Type.GTEQ, 4, ">=");
+        operation(Token.Type.LT, 4, "<");
+        operation(Token.Type.LTEQ, 4, "<=");
+        operation(Token.Type.PLUS, 5, "+");
+        operation(Token.Type.MINUS, 5, "-");
+        operation(Token.Type.STAR, 6, "*");
+        operation(Token.Type.SLASH, 6, "/");
+    }
     // Поля
-    private List<Token> tokens;
-    private int size;
+    private TokenStream tokens;
+    private Compilation compilation;
+    private Parser.Mode mode;
+    private IntermediateCode iCode;
     private int globalPos;
-    private int label;
     // Переменные
     private ArrayList<Function> functions = new ArrayList<>();
     private Map<String, Integer> functionsPos = new HashMap<String, Integer>();
-    private Map<String, Expression> variables = new HashMap<String, Expression>();
+    private Map<String, Function> functionTable = new HashMap<String, Function>();
+    private Map<Integer, Function> declarations = new HashMap<Integer, Function>();
+    private Scope scope = new Scope();
+    private ExpressionTable nodes;
+    private List<Diagnostic> errors;
 
     /**
      * Конструктор
@@ -25,22 +60,93 @@ public class Parser {
      * @param tokens список токенов
      */
     public Parser(List<Token> tokens) {
+        this(new TokenList(tokens), new Compilation());
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param tokens список токенов
+     * @param mode   режим разбора
+     */
+    public Parser(List<Token> tokens, Parser.Mode mode) {
+        this(new TokenList(tokens), new Compilation(mode, new IntermediateCode()));
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param tokens список токенов
+     * @param mode   режим разбора
+     * @param iCode  приемник промежуточного кода этой компиляции
+     */
+    public Parser(List<Token> tokens, Parser.Mode mode, IntermediateCode iCode) {
+        this(new TokenList(tokens), new Compilation(mode, iCode));
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param tokens      список токенов
+     * @param compilation контекст компиляции
+     */
+    public Parser(List<Token> tokens, Compilation compilation) {
+        this(new TokenList(tokens), compilation);
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param tokens последовательность токенов (например, {@link TokenBuffer})
+     */
+    public Parser(TokenStream tokens) {
+        this(tokens, new Compilation());
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param tokens      последовательность токенов (например, {@link TokenBuffer})
+     * @param compilation контекст компиляции
+     */
+    public Parser(TokenStream tokens, Compilation compilation) {
         this.tokens = tokens;
-        size = tokens.size();
+        this.compilation = compilation;
+        mode = compilation.getMode();
+        iCode = compilation.getIntermediateCode();
+        nodes = new ExpressionTable(compilation);
+    }
+
+    /**
+     * Получить промежуточный код
+     * 
+     * @return промежуточный код этой компиляции
+     */
+    public IntermediateCode getIntermediateCode() {
+        return iCode;
+    }
+
+    /**
+     * Получить текст промежуточного кода
+     * 
+     * @return код (string) или null, если код записывается во внешний приемник
+     */
+    public String getICode() {
+        return iCode.getICode();
     }
 
     /**
-     * Получить токен на relativePosition
+     * Получить номер токена на relativePosition
      * 
      * @param relativePosition относительная позиция токена к глобальной
-     * @return токен на текущей глобальной позиции или null, если достигнут конец
-     *         списка токенов
+     * @return номер токена на текущей глобальной позиции или -1, если достигнут
+     *         конец последовательности токенов
      */
-    private Token get(int relativePosition) {
+    private int get(int relativePosition) {
         final int position = globalPos + relativePosition;
-        if (position >= size)
-            return null;
-        return tokens.get(position);
+        if (!tokens.has(position))
+            return -1;
+        return position;
     }
 
     /**
@@ -50,8 +156,8 @@ public class Parser {
      * @return true или false
      */
     private boolean isTypeMatch(Token.Type compared) {
-        Token current = get(0);
-        if (current == null || compared != current.getType())
+        int current = get(0);
+        if (current < 0 || compared != tokens.getType(current))
             return false;
         globalPos++;
         return true;
@@ -65,66 +171,97 @@ public class Parser {
      * @throws SemanticException семантическая ошибка
      */
     private Function setFunction() throws SyntaxException, SemanticException {
-        Token current = get(0);
+        int current = get(0);
         String funcVar = "";
-        HashMap<String, Expression> funcArgs = new HashMap<>();
+        Map<String, Expression> funcArgs = new LinkedHashMap<>();
         ArrayList<Statement> funcStates = new ArrayList<>();
+        // Функция, объявленная при предварительном проходе, получает уже созданные аргументы
+        Function declared = declarations.remove(globalPos);
+        if (declared != null)
+            funcArgs = declared.getArguments();
         if (isTypeMatch(Token.Type.DEF)) {
             // Начало функции - def ... ( ...
             current = get(-1);
             if (!isTypeMatch(Token.Type.VAR)) {
-                throw new SyntaxException(
-                        String.format("waited \"VAR\" after \"def\": %s", current.getFullPosition()));
+                throw syntaxError(current, "waited \"VAR\" after \"def\"");
             }
             current = get(-1);
-            funcVar = current.getText();
+            funcVar = tokens.getText(current);
             if (!isTypeMatch(Token.Type.LPAREN)) {
-                throw new SyntaxException(
-                        String.format("waited \"(\" after \"%s\": %s", funcVar, current.getFullPosition()));
+                throw syntaxError(current, "waited \"(\" after \"%s\"", funcVar);
             }
             // Аргументы функции
             while (true) {
                 current = get(-1);
-                String var = get(0).getText();
+                String var = tokens.getText(get(0));
                 if (isTypeMatch(Token.Type.VAR)) {
                     current = get(-1);
-                    Expression expr = new Expression(var, true);
+                    int slot = scope.declare(var);
+                    Expression expr = new Expression(compilation, var, slot);
                     funcArgs.put(var, expr);
-                    variables.put(current.getText(), expr);
+                    scope.set(slot, expr);
                 } else if (isTypeMatch(Token.Type.RPAREN)) {
                     break;
                 } else {
-                    throw new SyntaxException(
-                            String.format("waited \"VAR\" or \")\": %s", current.getFullPosition()));
+                    throw syntaxError(current, "waited \"VAR\" or \")\"");
                 }
             }
             // Конец аргументов и начало тела функции = ... ) { ...
             current = get(-1);
             if (!isTypeMatch(Token.Type.LBRACE)) {
-                throw new SyntaxException(
-                        String.format("waited \"{\" after \"def ...(...)\": %s", current.getFullPosition()));
+                throw syntaxError(current, "waited \"{\" after \"def ...(...)\"");
+            }
+            iCode.setFunction_Start(funcVar, funcArgs, scope);
+            // В режиме компиляции функция объявляется до разбора тела (доступна рекурсия)
+            Function func = declared;
+            if (mode == Parser.Mode.COMPILE) {
+                if (func == null) {
+                    func = new Function(compilation, funcVar, funcArgs);
+                    functionTable.putIfAbsent(funcVar, func);
+                }
+                functions.add(func);
             }
-            IntermediateCode.setFunction_Start(funcVar, funcArgs);
             // Тело функции
             functionsPos.put(funcVar, globalPos);
-            while (true) {
-                Statement state = setStatement();
-                if (state == null)
-                    break;
-                funcStates.add(state);
+            // Тело и конец функции - ... }
+            setBlock(funcStates);
+            iCode.setFunction_End();
+            if (func != null) {
+                func.setBody(scope, funcStates);
+                return func;
             }
-            // Конец тела функции - ... }
-            current = get(-1);
-            if (!isTypeMatch(Token.Type.RBRACE)) {
-                throw new SyntaxException(String.format("waited \"}\" after \"%s\": %s", current.getText(),
-                        current.getFullPosition()));
-            }
-            IntermediateCode.setFunction_End();
-            return new Function(funcVar, funcArgs, variables, funcStates);
+            func = new Function(compilation, funcVar, funcArgs, scope, funcStates);
+            functions.add(func);
+            functionTable.putIfAbsent(funcVar, func);
+            return func;
         }
         return null;
     }
 
+    /**
+     * Предварительный проход: объявить все функции программы по заголовкам
+     * def VAR(VAR*), чтобы вызовы находили функции, определенные ниже (и
+     * взаимно рекурсивные). Функции объявляются в порядке текста, поэтому
+     * получают те же номера, что и при разборе.
+     */
+    private void declareFunctions() {
+        for (int i = 0; tokens.has(i); i++) {
+            if (tokens.getType(i) != Token.Type.DEF || !tokens.has(i + 2) || tokens.getType(i + 1) != Token.Type.VAR
+                    || tokens.getType(i + 2) != Token.Type.LPAREN)
+                continue;
+            Map<String, Expression> funcArgs = new LinkedHashMap<>();
+            int j = i + 3;
+            for (; tokens.has(j) && tokens.getType(j) == Token.Type.VAR; j++)
+                funcArgs.put(tokens.getText(j), null);
+            if (!tokens.has(j) || tokens.getType(j) != Token.Type.RPAREN)
+                continue;
+            Function func = new Function(compilation, tokens.getText(i + 1), funcArgs);
+            functionTable.putIfAbsent(func.getFunctionVariable(), func);
+            declarations.put(i, func);
+            i = j;
+        }
+    }
+
     /**
      * Задать оператор S
      * 
@@ -133,10 +270,6 @@ public class Parser {
      * @throws SemanticException семантическая ошибка
      */
     private Statement setStatement() throws SyntaxException, SemanticException {
-        if (isTypeMatch(Token.Type.COMMENT)) {
-            globalPos++;
-            globalPos--;
-        }
         if (isTypeMatch(Token.Type.VAR)) {
             if (isTypeMatch(Token.Type.EQ)) {
                 return setAssignmentStatement();
@@ -149,12 +282,18 @@ public class Parser {
             return setPrintStatement();
         }
         if (isTypeMatch(Token.Type.IF)) {
+            if (mode == Parser.Mode.COMPILE)
+                return compileConditionalStatement();
             return setConditionalStatement();
         }
         if (isTypeMatch(Token.Type.WHILE)) {
+            if (mode == Parser.Mode.COMPILE)
+                return compilePrecyclicStatement();
             return setPrecyclicStatement();
         }
         if (isTypeMatch(Token.Type.DO)) {
+            if (mode == Parser.Mode.COMPILE)
+                return compilePostcyclicStatement();
             return setPostcyclicStatement();
         }
         if (isTypeMatch(Token.Type.RETURN))
@@ -171,12 +310,14 @@ public class Parser {
      */
     private Statement setAssignmentStatement() throws SyntaxException, SemanticException {
         Statement state = null;
-        Token current = get(-2);
-        String var = current.getText();
+        int current = get(-2);
+        String var = tokens.getText(current);
         Expression expr = setExpression();
-        state = new Statement(var, "=", expr);
-        IntermediateCode.setAssign(var, expr);
-        variables.put(var, expr);
+        state = new Statement(compilation, var, "=", expr);
+        int slot = scope.declare(var);
+        scope.set(slot, expr);
+        nodes.assign(slot);
+        iCode.setAssign(slot, expr);
         return state;
     }
 
@@ -188,53 +329,59 @@ public class Parser {
      * @throws SemanticException семантическая ошибка
      */
     private Statement setFunctionCallStatement() throws SyntaxException, SemanticException {
-        Token current = get(-2);
-        String funcVar = current.getText();
-        Map<String, Expression> funcArgs = new HashMap<String, Expression>();
+        int current = get(-2);
+        String funcVar = tokens.getText(current);
+        Map<String, Expression> funcArgs = new LinkedHashMap<String, Expression>();
         ArrayList<Statement> states = new ArrayList<>();
-        Function calledFunc = null;
-        try {
-            calledFunc = functions.stream().filter(f -> f.getFunctionVariable().equals(funcVar)).findFirst().get();
-        } catch (Exception ex) {
-            throw new SemanticException(
-                    String.format("function \"%s\" not declared: %s", funcVar, current.getFullPosition()));
-        }
+        Function calledFunc = functionTable.get(funcVar);
+        if (calledFunc == null)
+            throw semanticError(current, "function \"%s\" not declared", funcVar);
         String funcName = calledFunc.getName();
-        // Аргументы функции
+        // Аргументы функции связываются с параметрами по порядку объявления
         for (Map.Entry<String, Expression> entry : calledFunc.getArguments().entrySet()) {
             current = get(0);
-            String var = current.getText();
+            String var = tokens.getText(current);
             if (isTypeMatch(Token.Type.RPAREN))
                 break;
             Expression expr = null;
-            if (isTypeMatch(Token.Type.VAR))
-                expr = variables.get(var);
-            else
+            if (mode == Parser.Mode.COMPILE)
+                expr = setExpression();
+            else if (isTypeMatch(Token.Type.VAR)) {
+                int slot = scope.lookup(var);
+                expr = slot < 0 ? null : scope.get(slot);
+                if (expr == null)
+                    throw semanticError(current, "variable \"%s\" not initialized", var);
+            } else
                 expr = setExpression();
             funcArgs.put(entry.getKey(), expr);
         }
-        IntermediateCode.setFunction_Call(funcVar, funcArgs);
+        iCode.setFunction_Call(funcVar, funcArgs);
+        // В режиме компиляции тело функции уже разобрано: вызов только связывает аргументы
+        // (после ошибки при проверке тело тоже не вычисляется)
+        if (mode == Parser.Mode.COMPILE || hasErrors()) {
+            current = get(-1);
+            if (!isTypeMatch(Token.Type.RPAREN)) {
+                throw syntaxError(current, "waited \")\" after \"%s\"", tokens.getText(current));
+            }
+            return new Statement(compilation, funcName, funcVar, funcArgs, states);
+        }
         // Тело функции
         int currentGlobalPos = globalPos; // запоминаем текущую позицию
-        Map<String, Expression> oldVariables = variables; // запоминаем переменные до вызова
+        Scope oldScope = scope; // запоминаем область видимости до вызова
         globalPos = functionsPos.get(funcVar); // перемещаемся на позицию объявления функции после "("
-        IntermediateCode.setStop(true);
-        variables = funcArgs;
-        while (true) {
-            current = get(0);
-            Statement state = setStatement();
-            if (state == null)
-                break;
-            states.add(state);
-        }
+        iCode.setStop(true);
+        scope = new Scope(funcArgs);
+        setStatements(states);
         globalPos = currentGlobalPos; // возврат на запомненную позицию
-        IntermediateCode.setStop(false);
-        variables = oldVariables; // возврат к запомненным переменным
-        Statement state = new Statement(funcName, funcVar, funcArgs, states);
+        iCode.setStop(false);
+        // Значения переменных тела остаются в аргументах оператора вызова
+        for (int slot = 0; slot < scope.size(); slot++)
+            funcArgs.put(scope.getName(slot), scope.get(slot));
+        scope = oldScope; // возврат к запомненной области видимости
+        Statement state = new Statement(compilation, funcName, funcVar, funcArgs, states);
         current = get(-1);
         if (!isTypeMatch(Token.Type.RPAREN)) {
-            throw new SyntaxException(
-                    String.format("waited \")\" after \"%s\": %s", current.getText(), current.getFullPosition()));
+            throw syntaxError(current, "waited \")\" after \"%s\"", tokens.getText(current));
         }
 
         return state;
@@ -248,24 +395,23 @@ public class Parser {
      * @throws SyntaxException   синтаксическая ошибка
      */
     private Statement setPrintStatement() throws SemanticException, SyntaxException {
-        Token current = get(-1);
+        int current = get(-1);
         if (!isTypeMatch(Token.Type.LPAREN)) {
-            throw new SyntaxException(String.format("waited \"(\" after \"print\": %s", current.getFullPosition()));
+            throw syntaxError(current, "waited \"(\" after \"print\"");
         }
         Statement state;
         current = get(-1);
         Expression expr = setExpression();
         try {
-            state = new Statement("print", expr);
+            state = new Statement(compilation, "print", expr);
         } catch (SemanticException se) {
-            throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
+            throw semanticError(current, "%s", se);
         }
         current = get(-1);
         if (!isTypeMatch(Token.Type.RPAREN)) {
-            throw new SyntaxException(
-                    String.format("waited \")\" instead of \"%s\": %s", current.getText(), current.getFullPosition()));
+            throw syntaxError(current, "waited \")\" instead of \"%s\"", tokens.getText(current));
         }
-        IntermediateCode.setOperation("print", expr);
+        iCode.setOperation("print", expr);
         return state;
     }
 
@@ -277,73 +423,48 @@ public class Parser {
      * @throws SemanticException семантическая ошибка
      */
     private Statement setConditionalStatement() throws SyntaxException, SemanticException {
-        Token current = get(-1);
+        int current = get(-1);
         Expression expr = null;
-        Statement ifState = null;
         ArrayList<Statement> ifStates = new ArrayList<>();
-        Statement elseState = null;
         ArrayList<Statement> elseStates = new ArrayList<>();
         // условие
         if (!isTypeMatch(Token.Type.LPAREN)) {
-            throw new SyntaxException(String.format("waited \"(\" after \"if\": %s", current.getFullPosition()));
+            throw syntaxError(current, "waited \"(\" after \"if\"");
         }
         expr = setExpression();
         current = get(-1);
         if (!((Object) expr.getResult() instanceof Boolean)) {
             if (!((Object) expr.getResult() == null))
-            throw new SemanticException(
-                    String.format("waited class \"Boolean\" instead of \"%s\" with expression result \"%s\": %s",
-                            expr.getResult().getClass(), current.getText(), current.getFullPosition()));
+            throw semanticError(current, "waited class \"Boolean\" instead of \"%s\" with expression result \"%s\"",
+                    expr.getResult().getClass(), tokens.getText(current));
         }
         // if-операторы - ... ) {
         if (!isTypeMatch(Token.Type.RPAREN)) {
-            throw new SyntaxException(
-                    String.format("waited \")\" after \"%s\": %s", current.getText(), current.getFullPosition()));
+            throw syntaxError(current, "waited \")\" after \"%s\"", tokens.getText(current));
         }
         current = get(-1);
         if (!isTypeMatch(Token.Type.LBRACE)) {
-            throw new SyntaxException(String.format("waited \"{\" after \"if (...)\": %s", current.getFullPosition()));
-        }
-        IntermediateCode.setIfFalse(expr, label);
-        while (true) {
-            ifState = setStatement();
-            if (ifState == null)
-                break;
-
-            ifStates.add(ifState);
-        }
-        IntermediateCode.setGoto(label + 1);
-        current = get(-1);
-        if (!isTypeMatch(Token.Type.RBRACE)) {
-            throw new SyntaxException(
-                    String.format("waited \"}\" after \"%s\": %s", current.getText(), current.getFullPosition()));
+            throw syntaxError(current, "waited \"{\" after \"if (...)\"");
         }
+        iCode.setIfFalse(expr, compilation.getLabel());
+        setBlock(ifStates);
+        iCode.setGoto(compilation.getLabel() + 1);
         current = get(-1);
         // else-операторы
         if (isTypeMatch(Token.Type.ELSE)) {
             current = get(-1);
             if (!isTypeMatch(Token.Type.LBRACE)) {
-                throw new SyntaxException(String.format("waited \"{\" after \"else\": %s", current.getFullPosition()));
+                throw syntaxError(current, "waited \"{\" after \"else\"");
             }
-            IntermediateCode.setLabel(label);
-            while (true) {
-                elseState = setStatement();
-                if (elseState == null)
-                    break;
-                elseStates.add(elseState);
-            }
-            IntermediateCode.setLabel(label + 1);
-            current = get(-1);
-            if (!isTypeMatch(Token.Type.RBRACE)) {
-                throw new SyntaxException(
-                        String.format("waited \"}\" after \"%s\": %s", current.getText(), current.getFullPosition()));
-            }
-            label += 2;
+            iCode.setLabel(compilation.getLabel());
+            setBlock(elseStates);
+            iCode.setLabel(compilation.getLabel() + 1);
+            compilation.reserveLabels(2);
         } else {
-            IntermediateCode.setLabel_GotoPreviousLabel(label + 1);
+            iCode.setLabel_GotoPreviousLabel(compilation.getLabel() + 1);
         }
         Statement state;
-        state = new Statement(expr, ifStates, elseStates);
+        state = new Statement(compilation, expr, ifStates, elseStates);
         return state;
     }
 
@@ -355,14 +476,14 @@ public class Parser {
      * @throws SyntaxException   синтаксическая ошибка
      */
     private Statement setPrecyclicStatement() throws SemanticException, SyntaxException {
-        Token current = get(-1);
+        int current = get(-1);
         Expression expr = null;
         Statement state = null;
         int whileExprPos = -1;
         Expression whileExpr = null;
         ArrayList<Statement> states = new ArrayList<>();
         if (!isTypeMatch(Token.Type.LPAREN)) {
-            throw new SyntaxException(String.format("waited \"(\" after \"while\": %s", current.getFullPosition()));
+            throw syntaxError(current, "waited \"(\" after \"while\"");
         }
         whileExprPos = globalPos;
         whileExpr = setExpression();
@@ -371,46 +492,33 @@ public class Parser {
             current = get(-1);
             if (!((Object) whileExpr.getResult() instanceof Boolean)) {
                 if (!((Object) expr.getResult() == null))
-                    throw new SemanticException(
-                        String.format("waited class \"Boolean\" instead of \"%s\" with expression result \"%s\": %s",
-                                whileExpr.getResult().getClass(), current.getText(), current.getFullPosition()));
+                    throw semanticError(current, "waited class \"Boolean\" instead of \"%s\" with expression result \"%s\"",
+                            whileExpr.getResult().getClass(), tokens.getText(current));
             }
-            IntermediateCode.setLabel(label);
-            IntermediateCode.setIfFalse(whileExpr, label + 1);
+            iCode.setLabel(compilation.getLabel());
+            iCode.setIfFalse(whileExpr, compilation.getLabel() + 1);
             if (!isTypeMatch(Token.Type.RPAREN)) {
-                throw new SyntaxException(
-                        String.format("waited \")\" after \"%s\": %s", current.getText(), current.getFullPosition()));
+                throw syntaxError(current, "waited \")\" after \"%s\"", tokens.getText(current));
             }
             current = get(-1);
             if (!isTypeMatch(Token.Type.LBRACE)) {
-                throw new SyntaxException(
-                        String.format("waited \"{\" after \"while (...)\": %s", current.getFullPosition()));
-            }
-            while (true) {
-                state = setStatement();
-                if (state == null)
-                    break;
-                states.add(state);
+                throw syntaxError(current, "waited \"{\" after \"while (...)\"");
             }
+            setBlock(states);
             current = get(-1);
-            if (!isTypeMatch(Token.Type.RBRACE)) {
-                throw new SyntaxException(
-                        String.format("waited \"}\" after \"%s\": %s", current.getText(), current.getFullPosition()));
-            }
-            current = get(-1);
-            IntermediateCode.setGoto(label + 2);
-            IntermediateCode.setLabel(label + 1);
-            IntermediateCode.setGoto(label + 3);
-            label += 2;
-            if (whileExpr.getResult() == null || !(Boolean) whileExpr.getResult())
+            iCode.setGoto(compilation.getLabel() + 2);
+            iCode.setLabel(compilation.getLabel() + 1);
+            iCode.setGoto(compilation.getLabel() + 3);
+            compilation.reserveLabels(2);
+            if (whileExpr.getResult() == null || !(Boolean) whileExpr.getResult() || hasErrors())
                 break;
             globalPos = whileExprPos;
             whileExpr = setExpression();
         }
-        IntermediateCode.setLabel(label);
-        IntermediateCode.setGoto(label + 1);
-        IntermediateCode.setLabel(label + 1);
-        state = new Statement(expr, states);
+        iCode.setLabel(compilation.getLabel());
+        iCode.setGoto(compilation.getLabel() + 1);
+        iCode.setLabel(compilation.getLabel() + 1);
+        state = new Statement(compilation, expr, states);
         return state;
     }
 
@@ -422,7 +530,7 @@ public class Parser {
      * @throws SyntaxException   синтаксическая ошибка
      */
     private Statement setPostcyclicStatement() throws SemanticException, SyntaxException {
-        Token current = get(-1);
+        int current = get(-1);
         Expression expr = null;
         Statement state = null;
         Expression whileExpr = null;
@@ -431,28 +539,16 @@ public class Parser {
         do {
             current = get(-1);
             if (!isTypeMatch(Token.Type.LBRACE)) {
-                throw new SyntaxException(String.format("waited \"{\" after \"do\": %s", current.getFullPosition()));
-            }
-            while (true) {
-                state = setStatement();
-                if (state == null)
-                    break;
-                states.add(state);
-            }
-            current = get(-1);
-            if (!isTypeMatch(Token.Type.RBRACE)) {
-                throw new SyntaxException(
-                        String.format("waited \"}\" after \"%s\": %s", current.getText(), current.getFullPosition()));
+                throw syntaxError(current, "waited \"{\" after \"do\"");
             }
+            setBlock(states);
             current = get(-1);
             if (!isTypeMatch(Token.Type.WHILE)) {
-                throw new SyntaxException(String.format("waited \"while\" after \"}\": %s", current.getText(),
-                        current.getFullPosition()));
+                throw syntaxError(current, "waited \"while\" after \"}\"");
             }
             current = get(-1);
             if (!isTypeMatch(Token.Type.LPAREN)) {
-                throw new SyntaxException(String.format("waited \"(\" after \"while\": %s", current.getText(),
-                        current.getFullPosition()));
+                throw syntaxError(current, "waited \"(\" after \"while\"");
             }
             current = get(-1);
             whileExpr = setExpression();
@@ -461,321 +557,389 @@ public class Parser {
             }
             if (!((Object) whileExpr.getResult() instanceof Boolean)) {
                 if (!((Object) expr.getResult() == null))
-                throw new SemanticException(
-                        String.format("waited class \"Boolean\" instead of \"%s\" with expression result \"%s\": %s",
-                                whileExpr.getResult().getClass(), current.getText(), current.getFullPosition()));
+                throw semanticError(current, "waited class \"Boolean\" instead of \"%s\" with expression result \"%s\"",
+                        whileExpr.getResult().getClass(), tokens.getText(current));
             }
             if (!isTypeMatch(Token.Type.RPAREN)) {
-                throw new SyntaxException(
-                        String.format("waited \")\" after \"%s\": %s", current.getText(), current.getFullPosition()));
+                throw syntaxError(current, "waited \")\" after \"%s\"", tokens.getText(current));
             }
-            if (whileExpr.getResult() == null || !(Boolean) whileExpr.getResult())
+            if (whileExpr.getResult() == null || !(Boolean) whileExpr.getResult() || hasErrors())
                 break;
-            IntermediateCode.setIfTrue(whileExpr, label + 1);
-            IntermediateCode.setLabel(label);
-            IntermediateCode.setGoto(label + 2);
-            IntermediateCode.setLabel(label + 1);
-            label += 2;
+            iCode.setIfTrue(whileExpr, compilation.getLabel() + 1);
+            iCode.setLabel(compilation.getLabel());
+            iCode.setGoto(compilation.getLabel() + 2);
+            iCode.setLabel(compilation.getLabel() + 1);
+            compilation.reserveLabels(2);
             globalPos = whileExprPos;
         } while (true);
-        IntermediateCode.setLabel(label);
-        state = new Statement(states, expr);
+        iCode.setLabel(compilation.getLabel());
+        state = new Statement(compilation, states, expr);
         return state;
     }
 
     /**
-     * Задать оператор возврата return E
+     * Скомпилировать условный оператор if (E) {S+} else {S+}
      * 
      * @return оператор
      * @throws SyntaxException   синтаксическая ошибка
      * @throws SemanticException семантическая ошибка
      */
-    private Statement setReturnableStatement() throws SyntaxException, SemanticException {
-        Token current = get(-1);
-        Statement state;
-        current = get(-1);
+    private Statement compileConditionalStatement() throws SyntaxException, SemanticException {
+        int current = get(-1);
+        ArrayList<Statement> ifStates = new ArrayList<>();
+        ArrayList<Statement> elseStates = new ArrayList<>();
+        // Метки резервируются до разбора вложенных операторов
+        int elseLabel = compilation.reserveLabels(2);
+        int endLabel = elseLabel + 1;
+        if (!isTypeMatch(Token.Type.LPAREN)) {
+            throw syntaxError(current, "waited \"(\" after \"if\"");
+        }
         Expression expr = setExpression();
-        try {
-            state = new Statement("return", expr);
-        } catch (SemanticException se) {
-            throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
+        current = get(-1);
+        checkCondition(expr, current);
+        if (!isTypeMatch(Token.Type.RPAREN)) {
+            throw syntaxError(current, "waited \")\" after \"%s\"", tokens.getText(current));
         }
-        IntermediateCode.setOperation("return", expr);
-        return state;
+        current = get(-1);
+        if (!isTypeMatch(Token.Type.LBRACE)) {
+            throw syntaxError(current, "waited \"{\" after \"if (...)\"");
+        }
+        iCode.setIfFalse(expr, elseLabel);
+        setBlock(ifStates);
+        current = get(-1);
+        if (isTypeMatch(Token.Type.ELSE)) {
+            current = get(-1);
+            if (!isTypeMatch(Token.Type.LBRACE)) {
+                throw syntaxError(current, "waited \"{\" after \"else\"");
+            }
+            iCode.setGoto(endLabel);
+            iCode.setLabel(elseLabel);
+            setBlock(elseStates);
+            iCode.setLabel(endLabel);
+        } else
+            iCode.setLabel(elseLabel);
+        return new Statement(compilation, expr, ifStates, elseStates);
     }
 
     /**
-     * Задать выражение E
+     * Скомпилировать предциклический оператор while (E) {S+}
      * 
-     * @return выражение
-     * @throws SyntaxException   синтаксическая ошибка
+     * Тело цикла разбирается один раз: label: ifFalse E goto end; S+; goto label; end:
+     * 
+     * @return оператор
      * @throws SemanticException семантическая ошибка
+     * @throws SyntaxException   синтаксическая ошибка
      */
-    private Expression setExpression() throws SyntaxException, SemanticException {
-        Expression expr = setLogicalAdditionExpression();
-        return expr;
+    private Statement compilePrecyclicStatement() throws SemanticException, SyntaxException {
+        int current = get(-1);
+        ArrayList<Statement> states = new ArrayList<>();
+        int startLabel = compilation.reserveLabels(2);
+        int endLabel = startLabel + 1;
+        if (!isTypeMatch(Token.Type.LPAREN)) {
+            throw syntaxError(current, "waited \"(\" after \"while\"");
+        }
+        Expression whileExpr = setExpression();
+        current = get(-1);
+        checkCondition(whileExpr, current);
+        if (!isTypeMatch(Token.Type.RPAREN)) {
+            throw syntaxError(current, "waited \")\" after \"%s\"", tokens.getText(current));
+        }
+        current = get(-1);
+        if (!isTypeMatch(Token.Type.LBRACE)) {
+            throw syntaxError(current, "waited \"{\" after \"while (...)\"");
+        }
+        iCode.setLabel(startLabel);
+        iCode.setIfFalse(whileExpr, endLabel);
+        setBlock(states);
+        iCode.setGoto(startLabel);
+        iCode.setLabel(endLabel);
+        return new Statement(compilation, whileExpr, states);
     }
 
     /**
-     * Задать выражение логического сложения E||E
+     * Скомпилировать постциклический оператор do {S+} while (E)
      * 
-     * @return выражение
+     * Тело цикла разбирается один раз: label: S+; ifTrue E goto label
+     * 
+     * @return оператор
      * @throws SemanticException семантическая ошибка
      * @throws SyntaxException   синтаксическая ошибка
      */
-    private Expression setLogicalAdditionExpression() throws SemanticException, SyntaxException {
-        Token current = get(0);
-        Expression expr = setLogicalMultiplicationExpression();
-        while (true) {
-            if (isTypeMatch(Token.Type.BARBAR)) {
-                try {
-                    current = get(0);
-                    expr = new Expression("||", expr, setLogicalMultiplicationExpression());
-                } catch (SemanticException se) {
-                    throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-                }
-                continue;
-            }
-            break;
+    private Statement compilePostcyclicStatement() throws SemanticException, SyntaxException {
+        int current = get(-1);
+        ArrayList<Statement> states = new ArrayList<>();
+        int startLabel = compilation.reserveLabels(1);
+        if (!isTypeMatch(Token.Type.LBRACE)) {
+            throw syntaxError(current, "waited \"{\" after \"do\"");
+        }
+        iCode.setLabel(startLabel);
+        setBlock(states);
+        current = get(-1);
+        if (!isTypeMatch(Token.Type.WHILE)) {
+            throw syntaxError(current, "waited \"while\" after \"}\"");
+        }
+        current = get(-1);
+        if (!isTypeMatch(Token.Type.LPAREN)) {
+            throw syntaxError(current, "waited \"(\" after \"while\"");
         }
-        return expr;
+        Expression whileExpr = setExpression();
+        current = get(-1);
+        checkCondition(whileExpr, current);
+        if (!isTypeMatch(Token.Type.RPAREN)) {
+            throw syntaxError(current, "waited \")\" after \"%s\"", tokens.getText(current));
+        }
+        iCode.setIfTrue(whileExpr, startLabel);
+        return new Statement(compilation, states, whileExpr);
     }
 
     /**
-     * Задать выражение логического умножения E&&E
+     * Задать операторы блока до первого нераспознанного токена
      * 
-     * @return выражение
-     * @throws SemanticException семантическая ошибка
+     * @param states список, в который добавляются операторы
      * @throws SyntaxException   синтаксическая ошибка
+     * @throws SemanticException семантическая ошибка
      */
-    private Expression setLogicalMultiplicationExpression() throws SemanticException, SyntaxException {
-        Token current = get(0);
-        Expression expr = setEqualityExpression();
+    private void setStatements(ArrayList<Statement> states) throws SyntaxException, SemanticException {
         while (true) {
-            if (isTypeMatch(Token.Type.AMPAMP)) {
-                try {
-                    current = get(0);
-                    expr = new Expression("&&", expr, setEqualityExpression());
-                } catch (SemanticException se) {
-                    throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-                }
+            Statement state;
+            try {
+                state = setStatement();
+            } catch (SyntaxException | SemanticException ex) {
+                // При проверке ошибка записывается, разбор продолжается со следующего оператора
+                if (!report(ex))
+                    throw ex;
+                synchronize();
                 continue;
             }
-            break;
+            if (state == null)
+                break;
+            states.add(state);
         }
-        return expr;
     }
 
     /**
-     * Задать выражение равенства E==E (E!=E)
+     * Задать операторы блока и закрывающую скобку S+ }
      * 
-     * @return выражение
-     * @throws SemanticException семантическая ошибка
+     * @param states список, в который добавляются операторы
      * @throws SyntaxException   синтаксическая ошибка
+     * @throws SemanticException семантическая ошибка
      */
-    private Expression setEqualityExpression() throws SemanticException, SyntaxException {
-        Token current = get(0);
-        Expression expr = setComparisonExpression();
-        if (isTypeMatch(Token.Type.EQEQ)) {
-            try {
-                current = get(0);
-                expr = new Expression("==", expr, setComparisonExpression());
-            } catch (SemanticException se) {
-                throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-            }
-            return expr;
-        }
-        if (isTypeMatch(Token.Type.EXCLEQ)) {
-            try {
-                current = get(0);
-                expr = new Expression("!=", expr, setComparisonExpression());
-            } catch (SemanticException se) {
-                throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-            }
-            return expr;
+    private void setBlock(ArrayList<Statement> states) throws SyntaxException, SemanticException {
+        while (true) {
+            setStatements(states);
+            int current = get(-1);
+            if (isTypeMatch(Token.Type.RBRACE))
+                return;
+            SyntaxException ex = syntaxError(current, "waited \"}\" after \"%s\"", tokens.getText(current));
+            if (!report(ex))
+                throw ex;
+            synchronize();
+            // Блок без закрывающей скобки заканчивается на следующей функции
+            if (get(0) < 0 || tokens.getType(globalPos) == Token.Type.DEF)
+                return;
         }
-        return expr;
     }
 
     /**
-     * Задать выражение сравнения E>E E>=E E<E E<=E
+     * Записать ошибку при проверке программы ({@link #validate()})
      * 
-     * @return выражение
-     * @throws SemanticException семантическая ошибка
-     * @throws SyntaxException   синтаксическая ошибка
+     * @param ex ошибка
+     * @return true, если ошибка записана, false, если программа не проверяется
+     *         (ошибку нужно выбросить)
      */
-    private Expression setComparisonExpression() throws SemanticException, SyntaxException {
-        Token current = get(0);
-        Expression expr = setAdditionExpression();
+    private boolean report(Exception ex) {
+        if (errors == null)
+            return false;
+        Diagnostic diagnostic;
+        if (ex instanceof SyntaxException)
+            diagnostic = ((SyntaxException) ex).getDiagnostic();
+        else
+            diagnostic = ((SemanticException) ex).getDiagnostic();
+        if (diagnostic == null)
+            diagnostic = new Diagnostic(ex instanceof SyntaxException ? Diagnostic.Kind.SYNTAX
+                    : Diagnostic.Kind.SEMANTIC, "%s", ex);
+        // Тело функции при вызове и тело цикла разбираются повторно: одна ошибка записывается один раз
+        for (Diagnostic e : errors)
+            if (e.getKind() == diagnostic.getKind() && e.getToken() == diagnostic.getToken()
+                    && e.getToken() >= 0)
+                return true;
+        errors.add(diagnostic);
+        return true;
+    }
+
+    /**
+     * Пропустить токены до начала следующего оператора, закрывающей скобки
+     * блока или следующей функции (вложенные блоки пропускаются целиком)
+     */
+    private void synchronize() {
+        int depth = 0;
         while (true) {
-            if (isTypeMatch(Token.Type.GT)) {
-                try {
-                    current = get(0);
-                    expr = new Expression(">", expr, setAdditionExpression());
-                } catch (SemanticException se) {
-                    throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-                }
-                continue;
-            }
-            if (isTypeMatch(Token.Type.GTEQ)) {
-                try {
-                    current = get(0);
-                    expr = new Expression(">=", expr, setAdditionExpression());
-                } catch (SemanticException se) {
-                    throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-                }
-                continue;
-            }
-            if (isTypeMatch(Token.Type.LT)) {
-                try {
-                    current = get(0);
-                    expr = new Expression("<", expr, setAdditionExpression());
-                } catch (SemanticException se) {
-                    throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-                }
-                continue;
-            }
-            if (isTypeMatch(Token.Type.LTEQ)) {
-                try {
-                    current = get(0);
-                    expr = new Expression("<=", expr, setAdditionExpression());
-                } catch (SemanticException se) {
-                    throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-                }
-                continue;
-            }
-            break;
+            int current = get(0);
+            if (current < 0)
+                return;
+            Token.Type type = tokens.getType(current);
+            if (depth == 0 && (type == Token.Type.DEF || type == Token.Type.RBRACE || isStatementStart(current)))
+                return;
+            if (type == Token.Type.LBRACE)
+                depth++;
+            else if (type == Token.Type.RBRACE)
+                depth--;
+            globalPos++;
         }
-        return expr;
     }
 
     /**
-     * Задать выражение сложения E+E (вычитание E-E)
+     * Начинается ли с токена оператор
      * 
-     * @return выражение
-     * @throws SyntaxException   синтаксическая ошибка
-     * @throws SemanticException семантическая ошибка
+     * @param current номер токена
+     * @return true, если токен - ключевое слово оператора или переменная перед
+     *         "=" или "("
      */
-    private Expression setAdditionExpression() throws SyntaxException, SemanticException {
-        Token current = get(0);
-        Expression expr = setMultiplicationExpression();
-        while (true) {
-            if (isTypeMatch(Token.Type.PLUS)) {
-                try {
-                    current = get(0);
-                    expr = new Expression("+", expr, setMultiplicationExpression());
-                } catch (SemanticException se) {
-                    throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-                }
-                continue;
-            }
-            if (isTypeMatch(Token.Type.MINUS)) {
-                try {
-                    current = get(0);
-                    expr = new Expression("-", expr, setMultiplicationExpression());
-                } catch (SemanticException se) {
-                    throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-                }
-                continue;
-            }
-            break;
+    private boolean isStatementStart(int current) {
+        switch (tokens.getType(current)) {
+            case PRINT:
+            case IF:
+            case WHILE:
+            case DO:
+            case RETURN:
+                return true;
+            case VAR:
+                if (!tokens.has(current + 1))
+                    return false;
+                Token.Type next = tokens.getType(current + 1);
+                return next == Token.Type.EQ || next == Token.Type.LPAREN;
+            default:
+                return false;
         }
-        return expr;
     }
 
     /**
-     * Задать выражение умножения Е*Е (деление Е/E)
+     * Были ли ошибки при проверке программы (после ошибки значения выражений
+     * недостоверны, поэтому циклы при вычислении разбираются один раз)
      * 
-     * @return
-     * @throws SyntaxException   синтаксическая ошибка
+     * @return true, если записана хотя бы одна ошибка
+     */
+    private boolean hasErrors() {
+        return errors != null && !errors.isEmpty();
+    }
+
+    /**
+     * Проверить, что условие имеет логический тип (неизвестный результат допускается)
+     * 
+     * @param expr    выражение условия
+     * @param current номер токена для указания позиции ошибки
      * @throws SemanticException семантическая ошибка
      */
-    private Expression setMultiplicationExpression() throws SyntaxException, SemanticException {
-        Token current = get(0);
-        Expression expr = setNegationExpression();
-        while (true) {
-            if (isTypeMatch(Token.Type.STAR)) {
-                try {
-                    current = get(0);
-                    expr = new Expression("*", expr, setNegationExpression());
-                } catch (SemanticException se) {
-                    throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-                }
-                continue;
-            }
-            if (isTypeMatch(Token.Type.SLASH)) {
-                try {
-                    current = get(0);
-                    expr = new Expression("/", expr, setNegationExpression());
-                } catch (SemanticException se) {
-                    throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-                }
-                continue;
-            }
-            break;
-        }
-        return expr;
+    private void checkCondition(Expression expr, int current) throws SemanticException {
+        Object result = expr.getResult();
+        if (result != null && !(result instanceof Boolean))
+            throw semanticError(current, "waited class \"Boolean\" instead of \"%s\" with expression result \"%s\"",
+                    result.getClass(), tokens.getText(current));
     }
 
     /**
-     * Задать выражение отрицания -E !E
+     * Задать оператор возврата return E
      * 
-     * @return отрицание выражения
+     * @return оператор
      * @throws SyntaxException   синтаксическая ошибка
      * @throws SemanticException семантическая ошибка
      */
-    private Expression setNegationExpression() throws SyntaxException, SemanticException {
-        Token current = get(0);
-        Expression expr;
-        if (isTypeMatch(Token.Type.EXCL)) {
-            try {
-                current = get(0);
-                expr = new Expression("!", setEnclosingExpression());
-            } catch (SemanticException se) {
-                throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-            }
-            return expr;
-        }
-        if (isTypeMatch(Token.Type.MINUS)) {
-            try {
-                current = get(0);
-                expr = new Expression("-", setEnclosingExpression());
-            } catch (SemanticException se) {
-                throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
-            }
-            return expr;
-        }
-        if (isTypeMatch(Token.Type.PLUS)) {
-            return setEnclosingExpression();
+    private Statement setReturnableStatement() throws SyntaxException, SemanticException {
+        int current = get(-1);
+        Statement state;
+        current = get(-1);
+        Expression expr = setExpression();
+        try {
+            state = new Statement(compilation, "return", expr);
+        } catch (SemanticException se) {
+            throw semanticError(current, "%s", se);
         }
-        return setEnclosingExpression();
+        iCode.setOperation("return", expr);
+        return state;
     }
 
     /**
-     * Задать заключающее выражение (E)
+     * Задать выражение E
+     * 
+     * Разбор методом предшествования операторов по таблице {@link #PRECEDENCE}:
+     * вместо цепочки функций по одной на уровень приоритета используется явный
+     * стек незаконченных операций, поэтому вложенность скобок не ограничена
+     * стеком вызовов. Ошибки, как и при рекурсивном спуске, дополняются
+     * положением каждой операции, правый операнд которой содержит ошибку.
      * 
-     * @return заключенное выражение
+     * @return выражение
      * @throws SyntaxException   синтаксическая ошибка
      * @throws SemanticException семантическая ошибка
      */
-    private Expression setEnclosingExpression() throws SyntaxException, SemanticException {
-        if (isTypeMatch(Token.Type.LPAREN)) {
-            Token current = get(0);
-            Expression expr;
-            try {
-                current = get(0);
-                expr = new Expression("(", setExpression(), ")");
-            } catch (SemanticException se) {
-                throw new SemanticException(String.format("%s: %s", se.getMessage(), current.getFullPosition()));
+    private Expression setExpression() throws SyntaxException, SemanticException {
+        ArrayList<Parser.Operation> stack = new ArrayList<>();
+        stack.add(new Parser.Operation(Parser.Operation.LEVEL, 1, 0));
+        try {
+            Expression expr = null;
+            while (true) {
+                if (expr == null) {
+                    // Операнд: -E, !E, +E, (E) или примитивное выражение
+                    Token.Type type = get(0) < 0 ? null : tokens.getType(get(0));
+                    if (type == Token.Type.EXCL || type == Token.Type.MINUS) {
+                        globalPos++;
+                        stack.add(new Parser.Operation(Parser.Operation.UNARY, 0, get(0)));
+                        stack.get(stack.size() - 1).operation = type == Token.Type.EXCL ? "!" : "-";
+                    } else if (type == Token.Type.PLUS)
+                        globalPos++;
+                    if (isTypeMatch(Token.Type.LPAREN)) {
+                        stack.add(new Parser.Operation(Parser.Operation.PAREN, 0, get(0)));
+                        stack.add(new Parser.Operation(Parser.Operation.LEVEL, 1, 0));
+                        continue;
+                    }
+                    expr = setPrimitiveExpression();
+                }
+                Parser.Operation top = stack.get(stack.size() - 1);
+                if (top.kind == Parser.Operation.UNARY) {
+                    expr = nodes.unary(top.operation, expr);
+                    stack.remove(stack.size() - 1);
+                    continue;
+                }
+                if (top.kind == Parser.Operation.PAREN) {
+                    expr = nodes.brackets(expr);
+                    stack.remove(stack.size() - 1);
+                    if (!isTypeMatch(Token.Type.RPAREN))
+                        throw syntaxError(top.current, "waited \")\" instead of %s", tokens.getText(top.current));
+                    continue;
+                }
+                // Уровень приоритета: первый операнд или правый операнд ожидающей операции
+                if (top.left == null)
+                    top.left = expr;
+                else {
+                    top.left = nodes.binary(top.operation, top.left, expr);
+                    top.operation = null;
+                }
+                expr = null;
+                int current = get(0);
+                int precedence = current < 0 ? 0 : PRECEDENCE[tokens.getType(current).ordinal()];
+                if (precedence >= top.precedence && precedence <= top.limit) {
+                    Token.Type type = tokens.getType(current);
+                    globalPos++;
+                    top.operation = OPERATIONS[type.ordinal()];
+                    top.current = get(0);
+                    // Левоассоциативные операции продолжают уровень, сравнения на равенство - нет
+                    top.limit = type == Token.Type.EQEQ || type == Token.Type.EXCLEQ ? precedence - 1 : precedence;
+                    stack.add(new Parser.Operation(Parser.Operation.LEVEL, precedence + 1, 0));
+                    continue;
+                }
+                stack.remove(stack.size() - 1);
+                if (stack.isEmpty())
+                    return top.left;
+                expr = top.left;
             }
-            if (isTypeMatch(Token.Type.RPAREN)) {
-                current = get(0);
-            } else
-                throw new SyntaxException(
-                        String.format("waited \")\" instead of %s: %s", current.getText(), current.getFullPosition()));
-            return expr;
+        } catch (SemanticException se) {
+            // Ошибка дополняется положением всех незаконченных операций
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                Parser.Operation operation = stack.get(i);
+                if (operation.kind != Parser.Operation.LEVEL || operation.operation != null)
+                    se = semanticError(operation.current, "%s", se);
+            }
+            throw se;
         }
-        return setPrimitiveExpression();
     }
 
     /**
@@ -787,58 +951,113 @@ public class Parser {
      * @throws SemanticException
      */
     private Expression setPrimitiveExpression() throws NumberFormatException, SyntaxException, SemanticException {
-        Token current = get(0);
-        if (current == null)
-            return null;
+        int current = get(0);
+        if (current < 0) {
+            current = get(-1);
+            throw syntaxError(current, "waited expression after \"%s\"", tokens.getText(current));
+        }
         if (isTypeMatch(Token.Type.INT)) {
-            Expression expr = new Expression(Integer.parseInt(current.getText()));
-            return expr;
+            return nodes.constant(Integer.parseInt(tokens.getText(current)));
         }
         if (isTypeMatch(Token.Type.BOOL)) {
-            Expression expr = new Expression(Boolean.parseBoolean(current.getText()));
-            return expr;
+            return nodes.constant(Boolean.parseBoolean(tokens.getText(current)));
         }
         if (isTypeMatch(Token.Type.STRING)) {
-            Expression expr = new Expression(current.getText());
-            return expr;
+            return nodes.constant(tokens.getText(current));
         }
         if (isTypeMatch(Token.Type.VAR)) {
-            String var = current.getText();
-            Expression expr = null;
-            if (variables.get(var) != null)
-                expr = variables.get(var);
-            else
-                throw new SemanticException(
-                        String.format("variable \"%s\" not initialized: %s", var, current.getFullPosition()));
-            return expr;
+            String var = tokens.getText(current);
+            int slot = scope.lookup(var);
+            if (slot < 0 || scope.get(slot) == null)
+                throw semanticError(current, "variable \"%s\" not initialized", var);
+            return mode == Parser.Mode.COMPILE ? nodes.variable(var, slot) : scope.get(slot);
         }
-        throw new SyntaxException(
-                String.format("unknown expression \"%s\": %s", current.getText(), current.getFullPosition()));
+        throw syntaxError(current, "unknown expression \"%s\"", tokens.getText(current));
     }
 
     /**
      * Парсинг
      * 
      * @return операторы
+     * @throws LexicalException  лексическая ошибка (при чтении токенов по мере
+     *                           разбора, например из {@link StreamingLexer})
      * @throws SyntaxException   синтаксическая ошибка
      * @throws SemanticException семантическая ошибка
      */
-    public List<Function> parse() throws SyntaxException, SemanticException {
-        Expression.resetCounter();
-        Statement.resetCounter();
-        Function.resetCounter();
-        IntermediateCode.resetICode();
-        label = 0;
-        while (true) {
-            Function func = setFunction();
-            if (func == null)
-                break;
-            functions.add(func);
-            variables.clear();
+    public List<Function> parse() throws LexicalException, SyntaxException, SemanticException {
+        compilation.reset();
+        nodes.clear();
+        iCode.setStrict(mode == Parser.Mode.COMPILE);
+        // При компиляции вызовы связываются с функциями по таблице, заполненной заранее;
+        // при вычислении тело функции выполняется при вызове, поэтому она должна быть определена выше
+        if (mode == Parser.Mode.COMPILE && tokens.isRewindable())
+            declareFunctions();
+        try {
+            while (true) {
+                Function func = null;
+                try {
+                    func = setFunction();
+                } catch (SyntaxException | SemanticException ex) {
+                    if (!report(ex))
+                        throw ex;
+                }
+                scope = new Scope();
+                nodes.clear();
+                if (func != null)
+                    continue;
+                // После ошибки разбор продолжается со следующей функции
+                if (!hasErrors())
+                    break;
+                while (get(0) >= 0 && tokens.getType(globalPos) != Token.Type.DEF)
+                    globalPos++;
+                if (get(0) < 0)
+                    break;
+            }
+        } catch (UncheckedLexicalException ex) {
+            throw ex.getCause();
+        } finally {
+            // Конвейер нельзя перечитать: после разбора, в том числе прерванного
+            // ошибкой, его поток лексера останавливается
+            if (tokens instanceof PipelinedLexer)
+                ((PipelinedLexer) tokens).close();
+        }
+        iCode.flush();
+        // При компиляции значения неизвестны: типы проверяются отдельным проходом
+        if (mode == Parser.Mode.COMPILE && !hasErrors()) {
+            try {
+                new TypeChecker(functions).check();
+            } catch (SemanticException ex) {
+                if (!report(ex))
+                    throw ex;
+            }
         }
         return functions;
     }
 
+    /**
+     * Проверка программы: разбор не останавливается на первой ошибке, а
+     * продолжается со следующего оператора, закрывающей скобки блока или
+     * следующей функции, так что за один проход находятся все ошибки. При
+     * ошибках промежуточный код и операторы недостоверны.
+     * 
+     * @return найденные ошибки в порядке обнаружения (пустой список, если
+     *         ошибок нет); лексическая ошибка заканчивает проверку
+     */
+    public List<Diagnostic> validate() {
+        errors = new ArrayList<>();
+        try {
+            parse();
+        } catch (LexicalException ex) {
+            Diagnostic diagnostic = ex.getDiagnostic();
+            errors.add(diagnostic != null ? diagnostic : new Diagnostic(Diagnostic.Kind.LEXICAL, "%s", ex));
+        } catch (SyntaxException | SemanticException ex) {
+            report(ex);
+        }
+        List<Diagnostic> result = errors;
+        errors = null;
+        return result;
+    }
+
     /**
      * Печать операторов
      * 
@@ -846,10 +1065,79 @@ public class Parser {
      */
     public String printFunctions() {
         String result = "";
-        if (tokens.size() != 0)
+        if (tokens.has(0))
             for (Function f : functions)
                 if (f != null)
                     result += f.printFunction();
         return result;
     }
+
+    /**
+     * Создать синтаксическую ошибку у токена (сообщение форматируется только
+     * при чтении)
+     * 
+     * @param current номер токена
+     * @param format  шаблон сообщения
+     * @param args    аргументы шаблона
+     * @return исключение
+     */
+    private SyntaxException syntaxError(int current, String format, Object... args) {
+        return new SyntaxException(diagnostic(Diagnostic.Kind.SYNTAX, current, format, args));
+    }
+
+    /**
+     * Создать семантическую ошибку у токена (сообщение форматируется только
+     * при чтении)
+     * 
+     * @param current номер токена
+     * @param format  шаблон сообщения
+     * @param args    аргументы шаблона
+     * @return исключение
+     */
+    private SemanticException semanticError(int current, String format, Object... args) {
+        return new SemanticException(diagnostic(Diagnostic.Kind.SEMANTIC, current, format, args));
+    }
+
+    private Diagnostic diagnostic(Diagnostic.Kind kind, int current, String format, Object... args) {
+        final Diagnostic diagnostic = new Diagnostic(kind, tokens.getLine(current), tokens.getPos(current), format,
+                args);
+        diagnostic.setToken(tokens, current);
+        return diagnostic;
+    }
+
+    private static void operation(Token.Type type, int precedence, String operation) {
+        PRECEDENCE[type.ordinal()] = precedence;
+        OPERATIONS[type.ordinal()] = operation;
+    }
+
+    /**
+     * Незаконченная операция в стеке разбора выражения
+     */
+    private static class Operation {
+        // Свойства
+        private static final int LEVEL = 0; // уровень приоритета (левый операнд и ожидающая операция)
+        private static final int UNARY = 1; // унарная операция -E или !E
+        private static final int PAREN = 2; // скобки (E)
+        // Поля
+        private int kind;
+        private int precedence;
+        private int limit = Integer.MAX_VALUE;
+        // Переменные
+        private Expression left;
+        private String operation;
+        private int current;
+
+        /**
+         * Конструктор
+         * 
+         * @param kind       вид операции
+         * @param precedence наименьший приоритет операций уровня
+         * @param current    номер токена для указания позиции ошибки
+         */
+        private Operation(int kind, int precedence, int current) {
+            this.kind = kind;
+            this.precedence = precedence;
+            this.current = current;
+        }
+    }
 }
\ No newline at end of file
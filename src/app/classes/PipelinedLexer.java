@@ -0,0 +1,214 @@
+package app.classes;
+
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.locks.LockSupport;
+
+import app.classes.exceptions.UncheckedLexicalException;
+
+/**
+ * Класс конвейерного лексического анализа
+ * 
+ * Лексер работает в отдельном потоке и пишет токены в кольцевой буфер
+ * ограниченного размера (один писатель, один читатель), парсер читает их из
+ * буфера по номеру, пока лексер разбирает дальше. Когда кольцо заполнено, поток
+ * лексера засыпает, пока парсер не освободит место. В памяти держится не больше
+ * токенов, чем вмещает кольцо, поэтому конвейер подходит для разбора в режиме
+ * {@link Parser.Mode#COMPILE}, который возвращается не более чем на два токена
+ * назад.
+ * 
+ * Ошибка лексера ({@link UncheckedLexicalException} или ошибка чтения)
+ * выбрасывается в потоке парсера, когда он доходит до места ошибки.
+ * {@link Parser#parse()} закрывает конвейер ({@link #close()}) по окончании
+ * разбора, в том числе прерванного ошибкой, и поток лексера завершается.
+ */
+public class PipelinedLexer implements TokenStream, AutoCloseable {
+    // Свойства
+    private static final int CAPACITY = 4096;
+    private static final int KEEP = 4;
+    private static final int SPINS = 128;
+    private TokenStream source;
+    private int capacity;
+    private Thread producer;
+    // Поля
+    private Token.Type[] types;
+    private String[] texts;
+    private int[] lines;
+    private int[] positions;
+    private volatile int published;
+    private volatile int requested;
+    private volatile boolean done;
+    private volatile boolean closed;
+    private volatile boolean waiting;
+    private volatile RuntimeException error;
+
+    /**
+     * Конструктор
+     * 
+     * @param reader входной поток
+     */
+    public PipelinedLexer(Reader reader) {
+        this(new StreamingLexer(reader), CAPACITY);
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param channel входной канал (UTF-8)
+     */
+    public PipelinedLexer(ReadableByteChannel channel) {
+        this(new StreamingLexer(channel), CAPACITY);
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param source   источник токенов, читаемый по порядку в потоке лексера
+     *                 (например, {@link StreamingLexer})
+     * @param capacity размер кольцевого буфера в токенах
+     */
+    public PipelinedLexer(TokenStream source, int capacity) {
+        if (capacity <= KEEP)
+            throw new IllegalArgumentException("Capacity must be greater than " + KEEP);
+        this.source = source;
+        this.capacity = capacity;
+        types = new Token.Type[capacity];
+        texts = new String[capacity];
+        lines = new int[capacity];
+        positions = new int[capacity];
+        producer = new Thread(this::produce, "lexer");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    @Override
+    public boolean isRewindable() {
+        return false;
+    }
+
+    @Override
+    public boolean has(int index) {
+        if (index < 0)
+            return false;
+        if (index > requested) {
+            requested = index;
+            if (waiting)
+                LockSupport.unpark(producer);
+        }
+        for (int idle = 0; index >= published; idle++) {
+            if (done) {
+                if (index < published)
+                    break;
+                if (error != null)
+                    throw error;
+                return false;
+            }
+            idle(idle);
+        }
+        return true;
+    }
+
+    @Override
+    public Token.Type getType(int index) {
+        return types[slot(index)];
+    }
+
+    @Override
+    public String getText(int index) {
+        return texts[slot(index)];
+    }
+
+    @Override
+    public int getLine(int index) {
+        return lines[slot(index)];
+    }
+
+    @Override
+    public int getPos(int index) {
+        return positions[slot(index)];
+    }
+
+    /**
+     * Остановить поток лексера
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(producer);
+    }
+
+    /**
+     * Цикл потока лексера: токены источника пишутся в кольцо и публикуются
+     * сразу, так как следующее чтение источника может заблокироваться на вводе
+     */
+    private void produce() {
+        int written = 0;
+        try {
+            while (!closed && source.has(written)) {
+                // Ячейка свободна, если парсер ушел от нее дальше, чем на KEEP токенов
+                for (int idle = 0; written >= requested - KEEP + capacity; idle++) {
+                    if (closed)
+                        return;
+                    if (idle < SPINS)
+                        idle(idle);
+                    else
+                        park(written);
+                }
+                final int slot = written % capacity;
+                types[slot] = source.getType(written);
+                texts[slot] = source.getText(written);
+                lines[slot] = source.getLine(written);
+                positions[slot] = source.getPos(written);
+                published = ++written;
+            }
+        } catch (RuntimeException ex) {
+            error = ex;
+        } finally {
+            published = written;
+            done = true;
+        }
+    }
+
+    /**
+     * Сон потока лексера до освобождения места в кольце или закрытия конвейера
+     * 
+     * @param written количество записанных токенов
+     */
+    private void park(int written) {
+        waiting = true;
+        // Парсер сначала сдвигает requested, затем проверяет waiting, поэтому
+        // после повторной проверки пробуждение не теряется
+        if (written >= requested - KEEP + capacity && !closed)
+            LockSupport.park(this);
+        waiting = false;
+    }
+
+    /**
+     * Получить ячейку кольца для токена
+     * 
+     * @param index номер токена
+     * @return ячейка кольца
+     */
+    private int slot(int index) {
+        if (!has(index))
+            throw new IndexOutOfBoundsException("Token " + index + " does not exist");
+        if (index < requested - KEEP)
+            throw new IllegalStateException("Token " + index + " has left the ring of " + capacity + " tokens");
+        return index % capacity;
+    }
+
+    /**
+     * Ожидание другого потока: сначала активное, затем с уступкой процессора,
+     * затем короткий сон
+     * 
+     * @param iteration номер итерации ожидания
+     */
+    private static void idle(int iteration) {
+        if (iteration < 64)
+            Thread.onSpinWait();
+        else if (iteration < 128)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(10_000);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,139 @@
+package app.classes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс области видимости функции
+ * 
+ * Каждому аргументу и локальной переменной функции назначается номер ячейки
+ * кадра (аргументам - первыми, затем переменным в порядке первого
+ * присваивания). Имя разрешается в номер один раз при разборе обращения,
+ * дальше переменная адресуется по номеру: в промежуточном коде, в машине и в
+ * back-end'ах кадр функции - массив фиксированного размера {@link #size()}.
+ */
+public class Scope {
+    // Свойства
+    private ArrayList<String> names = new ArrayList<>();
+    private Map<String, Integer> slots = new HashMap<>();
+    // Переменные
+    private ArrayList<Expression> values = new ArrayList<>();
+    private ArrayList<Expression.Type> types = new ArrayList<>();
+
+    /**
+     * Конструктор (пустая область)
+     */
+    public Scope() {
+    }
+
+    /**
+     * Конструктор (область вызова: аргументы со значениями)
+     * 
+     * @param arguments аргументы и их значения
+     */
+    public Scope(Map<String, Expression> arguments) {
+        for (Map.Entry<String, Expression> entry : arguments.entrySet())
+            set(declare(entry.getKey()), entry.getValue());
+    }
+
+    /**
+     * Объявить переменную (если она еще не объявлена)
+     * 
+     * @param name имя переменной
+     * @return номер ячейки
+     */
+    public int declare(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = names.size();
+            names.add(name);
+            values.add(null);
+            types.add(null);
+            slots.put(name, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Найти переменную
+     * 
+     * @param name имя переменной
+     * @return номер ячейки или -1, если переменная не объявлена
+     */
+    public int lookup(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Получить значение переменной
+     * 
+     * @param slot номер ячейки
+     * @return выражение, присвоенное переменной последним
+     */
+    public Expression get(int slot) {
+        return values.get(slot);
+    }
+
+    /**
+     * Задать значение переменной
+     * 
+     * @param slot номер ячейки
+     * @param expr присваиваемое выражение
+     */
+    public void set(int slot, Expression expr) {
+        values.set(slot, expr);
+    }
+
+    /**
+     * Получить статический тип переменной ({@link TypeChecker})
+     * 
+     * @param slot номер ячейки
+     * @return тип или null, если он не определен
+     */
+    public Expression.Type getType(int slot) {
+        return types.get(slot);
+    }
+
+    /**
+     * Задать статический тип переменной
+     * 
+     * @param slot номер ячейки
+     * @param type тип
+     */
+    void setType(int slot, Expression.Type type) {
+        types.set(slot, type);
+    }
+
+    /**
+     * Получить имя переменной
+     * 
+     * @param slot номер ячейки
+     * @return имя переменной
+     */
+    public String getName(int slot) {
+        return names.get(slot);
+    }
+
+    /**
+     * Получить имена переменных в порядке номеров ячеек (список пополняется
+     * по мере объявления переменных)
+     * 
+     * @return имена переменных
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Получить размер кадра
+     * 
+     * @return количество ячеек
+     */
+    public int size() {
+        return names.size();
+    }
+}
\ No newline at end of file
@@ -1,20 +1,46 @@
 package app.classes;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import app.classes.exceptions.SemanticException;
 
 public class Statement {
+    /**
+     * Перечисление видов оператора
+     */
+    public static enum Kind {
+        // Присвоение
+        ASSIGN,
+        // Печать
+        PRINT,
+        // Возврат значения
+        RETURN,
+        // Условный оператор
+        IF,
+        // Цикл с предусловием
+        WHILE,
+        // Цикл с постусловием
+        DO_WHILE,
+        // Вызов функции
+        CALL
+    }
     // Свойства
-    private String name;
+    private int id;
+    private Statement.Kind kind;
     private Object result;
-    private String text;
+    private String variable;
+    private String operation;
+    private String function;
+    private int elseIndex;
     // Поля
-    private ArrayList<Expression> expressions = new ArrayList<>();
-    private ArrayList<Statement> statements = new ArrayList<>(); // Внутренние операторы
-    // Статические поля
-    private static int counter = 0;
+    private ArrayList<Expression> expressions = new ArrayList<>(); // Выражения оператора (без вложенных)
+    private ArrayList<Statement> statements = new ArrayList<>(); // Непосредственно вложенные операторы
+    private Map<String, Expression> arguments; // Аргументы вызова по именам параметров
 
     /**
      * Получить имя выражения
@@ -22,7 +48,7 @@ public class Statement {
      * @return имя выражения
      */
     public String getName() {
-        return name;
+        return "S" + id;
     }
 
     public Object getResult() {
@@ -35,21 +61,101 @@ public class Statement {
      * @return содержимое выражения
      */
     public String getText() {
-        return text;
+        String name = getName();
+        switch (kind) {
+            case ASSIGN:
+                return name + " -> " + variable + operation + expressions.get(0).getName() + " = " + result;
+            case PRINT:
+            case RETURN:
+                return name + " -> " + operation + " " + expressions.get(0).getName();
+            case IF:
+                String elseText = "";
+                if (elseIndex < statements.size())
+                    elseText = " else { " + names(statements, elseIndex, statements.size()) + "}";
+                return name + " -> " + "if ( " + expressions.get(0).getName() + " ) { "
+                        + names(statements, 0, elseIndex) + "}" + elseText;
+            case WHILE:
+                return name + " -> " + "while ( " + expressions.get(0).getName() + " ) { "
+                        + names(statements, 0, statements.size()) + "}";
+            case DO_WHILE:
+                return name + " -> " + "do { " + names(statements, 0, statements.size()) + "} while ( "
+                        + expressions.get(0).getName() + " )";
+            default:
+                return name + " -> " + function + " = " + variable + " ( " + names(expressions, 0, expressions.size())
+                        + ") { " + names(statements, 0, statements.size()) + "} ";
+        }
+    }
+
+    /**
+     * Получить вид оператора
+     * 
+     * @return вид оператора
+     */
+    public Statement.Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Получить выражение оператора: присваиваемое, печатаемое, возвращаемое
+     * значение или условие
+     * 
+     * @return выражение или null для вызова функции
+     */
+    public Expression getExpression() {
+        return kind == Statement.Kind.CALL ? null : expressions.get(0);
     }
 
-    public ArrayList<Expression> getExpressions() {
-        return expressions;
+    /**
+     * Получить переменную присвоения или переменную-имя вызываемой функции
+     * 
+     * @return имя переменной или null
+     */
+    public String getVariable() {
+        return variable;
+    }
+
+    /**
+     * Получить аргументы вызова функции
+     * 
+     * @return словарь имя параметра - выражение аргумента или null, если
+     *         оператор не является вызовом
+     */
+    public Map<String, Expression> getArguments() {
+        return arguments;
     }
 
-    public void setExpressions(ArrayList<Expression> expressions) {
-        this.expressions = expressions;
+    /**
+     * Получить выражения оператора вместе с вложенными в порядке вычисления
+     * (для вызова функции - только аргументы)
+     * 
+     * @return ленивый обход выражений
+     */
+    public Iterable<Expression> getExpressions() {
+        if (kind == Statement.Kind.CALL)
+            return expressions;
+        return Expression.postOrder(expressions);
     }
 
-    public ArrayList<Statement> getStatements() {
+    /**
+     * Получить непосредственно вложенные операторы (тело условия или цикла,
+     * операторы вызываемой функции)
+     * 
+     * @return список операторов
+     */
+    public ArrayList<Statement> getChildren() {
         return statements;
     }
 
+    /**
+     * Получить все внутренние операторы: обход в глубину, каждый оператор после
+     * своих внутренних. Операторы вызываемой функции не раскрываются.
+     * 
+     * @return ленивый обход внутренних операторов
+     */
+    public Iterable<Statement> getStatements() {
+        return () -> new PostOrderIterator(this);
+    }
+
     public void setStatements(ArrayList<Statement> statements) {
         this.statements = statements;
     }
@@ -57,127 +163,99 @@ public class Statement {
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param var       переменная
      * @param operation операция
      * @param expr      выражение
      * @throws SemanticException семантическая ошибка
      */
-    public Statement(String var, String operation, Expression expr) throws SemanticException {
-        name = "S" + counter++;
-        expressions = new ArrayList<>(expr.getExpressions());
+    public Statement(Compilation compilation, String var, String operation, Expression expr) throws SemanticException {
+        id = compilation.nextStatement();
+        kind = Statement.Kind.ASSIGN;
         expressions.add(expr);
         result = expr.getResult();
-        if (!(result instanceof Integer || result instanceof Boolean || result instanceof String || result == null))
-            throw new SemanticException(String.format("unknown class of expression result \"%s\"", expr.getText()));
-        statements = new ArrayList<>();
-        text = name + " -> " + var + operation + expr.getName() + " = " + result;
+        if (compilation.getMode() != Parser.Mode.COMPILE
+                && !(result instanceof Integer || result instanceof Boolean || result instanceof String || result == null))
+            throw new SemanticException(new Diagnostic(Diagnostic.Kind.SEMANTIC,
+                    "unknown class of expression result \"%s\"", expr.getText()));
+        variable = var;
+        this.operation = operation;
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param operation операция
      * @param expr      выражение
      * @throws SemanticException
      */
-    public Statement(String operation, Expression expr) throws SemanticException {
-        name = "S" + counter++;
-        expressions = new ArrayList<>(expr.getExpressions());
+    public Statement(Compilation compilation, String operation, Expression expr) throws SemanticException {
+        id = compilation.nextStatement();
+        kind = "print".equals(operation) ? Statement.Kind.PRINT : Statement.Kind.RETURN;
         expressions.add(expr);
         result = expr.getResult();
-        if (!(result instanceof Integer || result instanceof Boolean || result instanceof String || result == null))
-            throw new SemanticException(String.format("unknown class of expression result \"%s\"", expr.getText()));
-        statements = new ArrayList<>();
-        switch (operation) {
-            case "print":
-                result = expr.getResult();
-                text = name + " -> " + operation + "(" + expr.getName() + ")" + " = " + result;
-            case "return":
-                result = expr;
-                text = name + " -> " + operation + " " + expr.getName();
-        }
+        if (compilation.getMode() != Parser.Mode.COMPILE
+                && !(result instanceof Integer || result instanceof Boolean || result instanceof String || result == null))
+            throw new SemanticException(new Diagnostic(Diagnostic.Kind.SEMANTIC,
+                    "unknown class of expression result \"%s\"", expr.getText()));
+        this.operation = operation;
+        // Для печати и возврата результат - само выражение
+        result = expr;
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param expr       выражение if
      * @param ifStates   список операторов оператора if
      * @param elseStates список операторов оператора else
      */
-    public Statement(Expression expr, ArrayList<Statement> ifStates, ArrayList<Statement> elseStates) {
-        name = "S" + counter++;
-        expressions = new ArrayList<>(expr.getExpressions());
+    public Statement(Compilation compilation, Expression expr, ArrayList<Statement> ifStates, ArrayList<Statement> elseStates) {
+        id = compilation.nextStatement();
+        kind = Statement.Kind.IF;
         expressions.add(expr);
-        statements = new ArrayList<>();
-        String ifStatesText = "{ ";
-        for (Statement s : ifStates) {
-            statements.addAll(s.statements);
-            statements.add(s);
-            ifStatesText = ifStatesText + s.getName() + " ";
-        }
-        ifStatesText = ifStatesText + "}";
-        String elseStatesText = "";
-        if (elseStates.size() != 0) {
-            elseStatesText = " else { ";
-            for (Statement s : elseStates) {
-                statements.addAll(s.statements);
-                statements.add(s);
-                elseStatesText = elseStatesText + s.getName() + " ";
-            }
-            elseStatesText = elseStatesText + "}";
-        }
+        statements = new ArrayList<>(ifStates);
+        statements.addAll(elseStates);
+        elseIndex = ifStates.size();
         result = (Boolean) expr.getResult();
-        text = name + " -> " + "if ( " + expr.getName() + " ) " + ifStatesText + elseStatesText;
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param whileExpr   выражение while
      * @param whileStates список операторов оператора while
      */
-    public Statement(Expression whileExpr, ArrayList<Statement> whileStates) {
-        name = "S" + counter++;
-        expressions = new ArrayList<>(whileExpr.getExpressions());
+    public Statement(Compilation compilation, Expression whileExpr, ArrayList<Statement> whileStates) {
+        id = compilation.nextStatement();
+        kind = Statement.Kind.WHILE;
         expressions.add(whileExpr);
-        statements = new ArrayList<>();
-        String statesText = "{ ";
-        for (Statement s : whileStates) {
-            statements.addAll(s.statements);
-            statements.add(s);
-            statesText = statesText + s.getName() + " ";
-        }
-        statesText = statesText + "}";
+        statements = new ArrayList<>(whileStates);
         result = null;
-        text = name + " -> " + "while ( " + whileExpr.getName() + " ) " + statesText;
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param whileStates список операторов оператора while
      * @param whileExpr   выражение while
      */
-    public Statement(ArrayList<Statement> whileStates, Expression whileExpr) {
-        name = "S" + counter++;
-        expressions = new ArrayList<>(whileExpr.getExpressions());
+    public Statement(Compilation compilation, ArrayList<Statement> whileStates, Expression whileExpr) {
+        id = compilation.nextStatement();
+        kind = Statement.Kind.DO_WHILE;
         expressions.add(whileExpr);
-        statements = new ArrayList<>();
-        String statesText = "{ ";
-        for (Statement s : whileStates) {
-            statements.addAll(s.statements);
-            statements.add(s);
-            statesText = statesText + s.getName() + " ";
-        }
-        statesText = statesText + "}";
+        statements = new ArrayList<>(whileStates);
         result = null;
-        text = name + " -> " + "do " + statesText + " while ( " + whileExpr.getName() + " )";
     }
 
     /**
      * Конструктор
      * 
+     * @param compilation контекст компиляции
      * @param funcName   имя функции
      * @param funcVar    переменная-имя функции
      * @param funcArgs   аргументы функции
@@ -185,23 +263,36 @@ public class Statement {
      * @param rtrnExpr   возвращаемое выражение функции
      * @throws SemanticException
      */
-    public Statement(String funcName, String funcVar, Map<String, Expression> funcArgs,
+    public Statement(Compilation compilation, String funcName, String funcVar, Map<String, Expression> funcArgs,
             ArrayList<Statement> funcStates) {
-        name = "S" + counter++;
-        String argsText = " ( ";
-        for (Expression e : funcArgs.values()) {
-            expressions.add(e);
-            argsText = argsText + e.getName() + " ";
-        }
-        argsText = argsText + ") ";
+        id = compilation.nextStatement();
+        kind = Statement.Kind.CALL;
+        function = funcName;
+        variable = funcVar;
+        arguments = funcArgs;
+        expressions.addAll(funcArgs.values());
         statements = funcStates;
-        String statesText = "{ ";
-        for (Statement s : statements) {
-            statesText = statesText + s.getName() + " ";
+        result = null;
+        if (!funcStates.isEmpty() && funcStates.get(funcStates.size() - 1).getResult() instanceof Expression)
+            result = (Expression) funcStates.get(funcStates.size() - 1).getResult();
+    }
+
+    /**
+     * Имена операторов или выражений через пробел
+     * 
+     * @param nodes операторы или выражения
+     * @param from  номер первого
+     * @param to    номер, следующий за последним
+     * @return имена в формате строки
+     */
+    private static String names(List<?> nodes, int from, int to) {
+        StringBuilder result = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            Object node = nodes.get(i);
+            result.append(node instanceof Statement ? ((Statement) node).getName() : ((Expression) node).getName())
+                    .append(' ');
         }
-        statesText = statesText + "} ";
-        result = (Expression) funcStates.get(funcStates.size() - 1).getResult();
-        text = name + " -> " + funcName + " = " + funcVar + argsText + statesText;
+        return result.toString();
     }
 
     /**
@@ -211,7 +302,7 @@ public class Statement {
      */
     private String printExpressions() {
         String result = "";
-        for (Expression e : expressions)
+        for (Expression e : getExpressions())
             if (e != null)
                 result += "    " + e.getName() + " -> " + e.getText() + '\n';
         return result;
@@ -225,16 +316,69 @@ public class Statement {
     public String printStatement() {
         String result = "";
         result += printExpressions();
-        for (Statement s : statements)
+        for (Statement s : getStatements())
             if (s != null)
                 result += "    " + s.getText() + '\n' + s.printExpressions();
         return result;
     }
 
     /**
-     * Сброс счетчика
+     * Итератор обхода внутренних операторов в глубину на явном стеке
      */
-    public static void resetCounter() {
-        counter = 0;
+    private static class PostOrderIterator implements Iterator<Statement> {
+        // Переменные
+        private ArrayDeque<Statement> stack = new ArrayDeque<>();
+        private ArrayDeque<Boolean> expanded = new ArrayDeque<>();
+        private Statement next;
+
+        /**
+         * Конструктор
+         * 
+         * @param root оператор, внутренние операторы которого обходятся
+         */
+        PostOrderIterator(Statement root) {
+            pushChildren(root);
+        }
+
+        /**
+         * Положить на стек непосредственно вложенные операторы. Операторы
+         * вызываемой функции кладутся уже раскрытыми.
+         * 
+         * @param state оператор
+         */
+        private void pushChildren(Statement state) {
+            List<Statement> children = state.statements;
+            boolean leaves = state.kind == Statement.Kind.CALL;
+            for (int i = children.size() - 1; i >= 0; i--) {
+                if (children.get(i) == null)
+                    continue;
+                stack.push(children.get(i));
+                expanded.push(leaves);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !stack.isEmpty()) {
+                Statement state = stack.pop();
+                if (expanded.pop()) {
+                    next = state;
+                } else {
+                    stack.push(state);
+                    expanded.push(true);
+                    pushChildren(state);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Statement next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Statement state = next;
+            next = null;
+            return state;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,315 @@
+package app.classes;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import app.classes.exceptions.LexicalException;
+import app.classes.exceptions.UncheckedLexicalException;
+
+/**
+ * Класс потокового лексера
+ * 
+ * Вход читается из {@link Reader} или {@link ReadableByteChannel} частями в
+ * буфер фиксированного размера, токены выдаются парсеру по запросу
+ * ({@link #has(int)}). В памяти держатся только символы текущего токена и
+ * последние токены окна, поэтому размер входа не ограничен памятью. Подходит
+ * для разбора в режиме {@link Parser.Mode#COMPILE}, который возвращается не
+ * более чем на два токена назад; режим {@link Parser.Mode#EVALUATE} повторно
+ * разбирает циклы и вызовы функций и требует окна на всю программу.
+ * 
+ * Лексическая ошибка при чтении токенов выбрасывается как
+ * {@link UncheckedLexicalException}, {@link Parser#parse()} раскрывает ее в
+ * {@link LexicalException}. Ошибка чтения выбрасывается как
+ * {@link UncheckedIOException}.
+ */
+public class StreamingLexer implements TokenStream {
+    // Свойства
+    private static final int BUFFER_SIZE = 8192;
+    private static final int WINDOW = 1024;
+    private Window input;
+    private Source lexer;
+    // Поля
+    private Token.Type[] types;
+    private String[] texts;
+    private int[] lines;
+    private int[] positions;
+    private int count;
+    private boolean finished;
+
+    /**
+     * Конструктор
+     * 
+     * @param reader входной поток
+     */
+    public StreamingLexer(Reader reader) {
+        this(reader, BUFFER_SIZE, WINDOW);
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param channel входной канал (UTF-8)
+     */
+    public StreamingLexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8), BUFFER_SIZE, WINDOW);
+    }
+
+    /**
+     * Конструктор
+     * 
+     * @param reader     входной поток
+     * @param bufferSize начальный размер буфера символов (растет только для
+     *                   токенов длиннее буфера)
+     * @param window     количество последних токенов, доступных по номеру
+     */
+    public StreamingLexer(Reader reader, int bufferSize, int window) {
+        input = new Window(reader, bufferSize);
+        lexer = new Source(input);
+        types = new Token.Type[window];
+        texts = new String[window];
+        lines = new int[window];
+        positions = new int[window];
+    }
+
+    @Override
+    public boolean isRewindable() {
+        return false;
+    }
+
+    @Override
+    public boolean has(int index) {
+        while (index >= count && !finished)
+            pull();
+        return index >= 0 && index < count;
+    }
+
+    @Override
+    public Token.Type getType(int index) {
+        return types[slot(index)];
+    }
+
+    @Override
+    public String getText(int index) {
+        return texts[slot(index)];
+    }
+
+    @Override
+    public int getLine(int index) {
+        return lines[slot(index)];
+    }
+
+    @Override
+    public int getPos(int index) {
+        return positions[slot(index)];
+    }
+
+    /**
+     * Количество прочитанных токенов
+     * 
+     * @return количество токенов
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Печать токенов окна
+     * 
+     * @return список токенов в формате строки
+     */
+    public String printTokens() {
+        final StringBuilder result = new StringBuilder();
+        for (int i = Math.max(0, count - types.length); i < count; i++)
+            result.append(getType(i)).append(' ').append(getText(i)).append('\n');
+        return result.toString();
+    }
+
+    /**
+     * Прочитать следующий токен (или пропустить пробельный символ)
+     */
+    private void pull() {
+        final int position = lexer.getPosition();
+        if (lexer.isEnd(position)) {
+            finished = true;
+            return;
+        }
+        input.mark(position);
+        try {
+            lexer.step();
+        } catch (LexicalException ex) {
+            throw new UncheckedLexicalException(ex);
+        }
+    }
+
+    /**
+     * Добавить токен в окно
+     * 
+     * @param type      тип токена
+     * @param text      содержимое токена
+     * @param tokenLine строка токена
+     * @param tokenPos  позиция токена в строке
+     */
+    private void add(Token.Type type, String text, int tokenLine, int tokenPos) {
+        final int slot = count % types.length;
+        types[slot] = type;
+        texts[slot] = text;
+        lines[slot] = tokenLine;
+        positions[slot] = tokenPos;
+        count++;
+    }
+
+    /**
+     * Получить ячейку окна для токена
+     * 
+     * @param index номер токена
+     * @return ячейка окна
+     */
+    private int slot(int index) {
+        if (!has(index))
+            throw new IndexOutOfBoundsException("Token " + index + " does not exist");
+        if (index < count - types.length)
+            throw new IllegalStateException("Token " + index + " has left the window of " + types.length + " tokens");
+        return index % types.length;
+    }
+
+    /**
+     * Лексер над буфером потока
+     */
+    private class Source extends Lexer {
+        /**
+         * Конструктор
+         * 
+         * @param input буфер потока
+         */
+        Source(Window input) {
+            super(input, new TokenBuffer(input));
+        }
+
+        @Override
+        protected boolean isEnd(int position) {
+            return !input.has(position);
+        }
+
+        @Override
+        protected void addToken(Token.Type type, int from, int to, int tokenLine, int tokenPos, int symbol) {
+            final String text;
+            if (symbol >= 0)
+                text = getTokenBuffer().getName(symbol);
+            else if (type == Token.Type.STRING)
+                text = TokenBuffer.unescape(input, from, to);
+            else
+                text = input.subSequence(from, to).toString();
+            add(type, text, tokenLine, tokenPos);
+        }
+
+        @Override
+        protected void addTrivia(int from, int to, int tokenLine, int tokenPos) {
+            // Комментарии не хранятся: окно держит только токены для парсера
+        }
+
+        @Override
+        public String printTokens() {
+            return StreamingLexer.this.printTokens();
+        }
+    }
+
+    /**
+     * Буфер потока с доступом по абсолютной позиции во входе
+     * 
+     * Символы до отметки (начала текущего токена) отбрасываются, когда буфер
+     * заполнен; буфер растет, только если токен не помещается в него целиком.
+     */
+    private static class Window implements CharSequence {
+        // Свойства
+        private Reader reader;
+        private char[] chars;
+        // Поля
+        private int offset;
+        private int count;
+        private int mark;
+        private boolean eof;
+
+        /**
+         * Конструктор
+         * 
+         * @param reader входной поток
+         * @param size   начальный размер буфера
+         */
+        Window(Reader reader, int size) {
+            this.reader = reader;
+            this.chars = new char[Math.max(size, 16)];
+        }
+
+        /**
+         * Есть ли символ на позиции (символы читаются при необходимости)
+         * 
+         * @param position абсолютная позиция
+         * @return true, если символ есть, false, если достигнут конец входа
+         */
+        boolean has(int position) {
+            while (position >= offset + count && !eof)
+                fill();
+            return position < offset + count;
+        }
+
+        /**
+         * Отметить начало текущего токена (символы до него больше не нужны)
+         * 
+         * @param position абсолютная позиция
+         */
+        void mark(int position) {
+            mark = position;
+        }
+
+        /**
+         * Дочитать вход в буфер
+         */
+        private void fill() {
+            if (count == chars.length) {
+                final int shift = mark - offset;
+                if (shift > 0) {
+                    System.arraycopy(chars, shift, chars, 0, count - shift);
+                    count -= shift;
+                    offset = mark;
+                } else
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            try {
+                final int read = reader.read(chars, count, chars.length - count);
+                if (read < 0)
+                    eof = true;
+                else
+                    count += read;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public int length() {
+            return offset + count;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < offset || !has(index))
+                throw new IndexOutOfBoundsException("Position " + index + " is out of the buffer");
+            return chars[index - offset];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start - offset, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, count);
+        }
+    }
+}
\ No newline at end of file
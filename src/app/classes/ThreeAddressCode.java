@@ -0,0 +1,457 @@
+package app.classes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс трехадресного кода
+ *
+ * Инструкции хранятся в параллельных массивах кодов операций и операндов
+ * (opcode, a, b, c). Операнд-значение кодирует вид (временная переменная $E,
+ * переменная, константа) в старших битах и индекс в младших. Переменная
+ * адресуется номером ячейки кадра своей функции ({@link Scope}), имена
+ * переменных хранятся в кадре и нужны только для печати. Текстовое
+ * представление строится только при печати.
+ */
+public class ThreeAddressCode {
+    // Коды операций
+    public static final int FUNCTION = 0; // a: (a - символ имени функции, b - номер кадра)
+    public static final int END = 1; // return (конец функции)
+    public static final int LABEL = 2; // a: (a - номер метки)
+    public static final int GOTO = 3; // goto a
+    public static final int IF_FALSE = 4; // ifFalse a goto b
+    public static final int IF_TRUE = 5; // ifTrue a goto b
+    public static final int POP = 6; // pop a (a - переменная)
+    public static final int PUSH = 7; // push a
+    public static final int CALL = 8; // call a b (a - символ имени функции, b - число аргументов)
+    public static final int RETURN = 9; // return a
+    public static final int PRINT = 10; // print a
+    public static final int ASSIGN = 11; // a=b
+    public static final int NEG = 12; // a=-b
+    public static final int NOT = 13; // a=!b
+    // Двуместные операции a=b op c
+    public static final int ADD = 14; // +
+    public static final int SUB = 15; // -
+    public static final int MUL = 16; // *
+    public static final int DIV = 17; // /
+    public static final int LT = 18; // <
+    public static final int LTEQ = 19; // <=
+    public static final int GT = 20; // >
+    public static final int GTEQ = 21; // >=
+    public static final int EQEQ = 22; // ==
+    public static final int EXCLEQ = 23; // !=
+    public static final int AMPAMP = 24; // &&
+    public static final int BARBAR = 25; // ||
+    // Виды операндов-значений
+    public static final int TEMP = 0;
+    public static final int VAR = 1;
+    public static final int CONST = 2;
+    // Поля
+    private static final String[] operations = { null, null, null, null, null, null, null, null, null, null,
+            null, null, "-", "!", "+", "-", "*", "/", "<", "<=", ">", ">=", "==", "!=", "&&", "||" };
+    private static final int KIND_SHIFT = 28;
+    private static final int INDEX_MASK = (1 << KIND_SHIFT) - 1;
+    private static final String tab1 = "  ";
+    // Переменные
+    private int[] opcode = new int[64];
+    private int[] a = new int[64];
+    private int[] b = new int[64];
+    private int[] c = new int[64];
+    private int size;
+    private ArrayList<String> names = new ArrayList<>();
+    private Map<String, Integer> symbols = new HashMap<>();
+    private ArrayList<List<String>> frames = new ArrayList<>();
+    private ArrayList<Object> constants = new ArrayList<>();
+    private Map<Object, Integer> constantsIndex = new HashMap<>();
+
+    /**
+     * Добавить инструкцию
+     *
+     * @param op код операции
+     * @param a  первый операнд
+     * @param b  второй операнд
+     * @param c  третий операнд
+     * @return номер инструкции
+     */
+    public int add(int op, int a, int b, int c) {
+        if (size == opcode.length) {
+            int capacity = size * 2;
+            opcode = Arrays.copyOf(opcode, capacity);
+            this.a = Arrays.copyOf(this.a, capacity);
+            this.b = Arrays.copyOf(this.b, capacity);
+            this.c = Arrays.copyOf(this.c, capacity);
+        }
+        opcode[size] = op;
+        this.a[size] = a;
+        this.b[size] = b;
+        this.c[size] = c;
+        return size++;
+    }
+
+    /**
+     * Получить количество инструкций
+     *
+     * @return количество инструкций
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Получить код операции инструкции
+     *
+     * @param i номер инструкции
+     * @return код операции
+     */
+    public int getOpcode(int i) {
+        return opcode[i];
+    }
+
+    /**
+     * Получить первый операнд инструкции
+     *
+     * @param i номер инструкции
+     * @return операнд
+     */
+    public int getA(int i) {
+        return a[i];
+    }
+
+    /**
+     * Получить второй операнд инструкции
+     *
+     * @param i номер инструкции
+     * @return операнд
+     */
+    public int getB(int i) {
+        return b[i];
+    }
+
+    /**
+     * Получить третий операнд инструкции
+     *
+     * @param i номер инструкции
+     * @return операнд
+     */
+    public int getC(int i) {
+        return c[i];
+    }
+
+    /**
+     * Удалить все инструкции, символы и константы
+     */
+    public void clear() {
+        size = 0;
+        names.clear();
+        symbols.clear();
+        frames.clear();
+        constants.clear();
+        constantsIndex.clear();
+    }
+
+    /**
+     * Получить символ имени функции, добавив его при необходимости
+     *
+     * @param name имя
+     * @return номер символа
+     */
+    public int symbol(String name) {
+        Integer symbol = symbols.get(name);
+        if (symbol == null) {
+            symbol = names.size();
+            names.add(name);
+            symbols.put(name, symbol);
+        }
+        return symbol;
+    }
+
+    /**
+     * Получить имя символа
+     *
+     * @param symbol номер символа
+     * @return имя
+     */
+    public String getName(int symbol) {
+        return names.get(symbol);
+    }
+
+    /**
+     * Получить количество символов
+     *
+     * @return количество символов
+     */
+    public int getSymbolsCount() {
+        return names.size();
+    }
+
+    /**
+     * Добавить кадр функции
+     *
+     * @param locals имена переменных в порядке номеров ячеек (список может
+     *               пополняться, пока функция разбирается)
+     * @return номер кадра
+     */
+    public int frame(List<String> locals) {
+        frames.add(locals);
+        return frames.size() - 1;
+    }
+
+    /**
+     * Получить имя переменной кадра
+     *
+     * @param frame номер кадра
+     * @param slot  номер ячейки
+     * @return имя переменной
+     */
+    public String getLocalName(int frame, int slot) {
+        return frames.get(frame).get(slot);
+    }
+
+    /**
+     * Получить размер кадра
+     *
+     * @param frame номер кадра
+     * @return количество ячеек переменных
+     */
+    public int getFrameSize(int frame) {
+        return frames.get(frame).size();
+    }
+
+    /**
+     * Получить номер константы, добавив ее при необходимости
+     *
+     * @param value значение (Integer, Boolean или String)
+     * @return номер константы
+     */
+    public int constant(Object value) {
+        Integer index = constantsIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantsIndex.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Получить значение константы
+     *
+     * @param index номер константы
+     * @return значение
+     */
+    public Object getConstant(int index) {
+        return constants.get(index);
+    }
+
+    /**
+     * Операнд - временная переменная $E
+     *
+     * @param id номер временной переменной
+     * @return операнд
+     */
+    public static int temp(int id) {
+        return (TEMP << KIND_SHIFT) | id;
+    }
+
+    /**
+     * Операнд - переменная
+     *
+     * @param slot номер ячейки кадра переменной
+     * @return операнд
+     */
+    public static int var(int slot) {
+        return (VAR << KIND_SHIFT) | slot;
+    }
+
+    /**
+     * Операнд - константа
+     *
+     * @param index номер константы
+     * @return операнд
+     */
+    public static int constantOperand(int index) {
+        return (CONST << KIND_SHIFT) | index;
+    }
+
+    /**
+     * Получить вид операнда
+     *
+     * @param operand операнд
+     * @return вид операнда (TEMP, VAR или CONST)
+     */
+    public static int kind(int operand) {
+        return operand >>> KIND_SHIFT;
+    }
+
+    /**
+     * Получить индекс операнда
+     *
+     * @param operand операнд
+     * @return номер временной переменной, ячейки кадра или константы
+     */
+    public static int index(int operand) {
+        return operand & INDEX_MASK;
+    }
+
+    /**
+     * Получить код двуместной операции
+     *
+     * @param operation операция (+ - * / < <= > >= == != && ||)
+     * @return код операции
+     */
+    public static int binaryOpcode(String operation) {
+        for (int op = ADD; op <= BARBAR; op++)
+            if (operations[op].equals(operation))
+                return op;
+        throw new IllegalArgumentException(String.format("unknown binary operation \"%s\"", operation));
+    }
+
+    /**
+     * Получить код одноместной операции
+     *
+     * @param operation операция (- !)
+     * @return код операции
+     */
+    public static int unaryOpcode(String operation) {
+        if ("-".equals(operation))
+            return NEG;
+        if ("!".equals(operation))
+            return NOT;
+        throw new IllegalArgumentException(String.format("unknown unary operation \"%s\"", operation));
+    }
+
+    /**
+     * Получить знак операции
+     *
+     * @param op код операции
+     * @return знак операции или null
+     */
+    public static String getOperation(int op) {
+        return operations[op];
+    }
+
+    /**
+     * Печать инструкций в текстовом виде промежуточного кода
+     *
+     * @param out  приемник
+     * @param from номер первой инструкции
+     * @param to   номер инструкции, следующей за последней
+     * @throws IOException ошибка записи
+     */
+    public void print(Appendable out, int from, int to) throws IOException {
+        // Кадр функции, которой принадлежит первая инструкция
+        int frame = -1;
+        for (int i = from - 1; i >= 0 && frame < 0; i--)
+            if (opcode[i] == FUNCTION)
+                frame = b[i];
+        for (int i = from; i < to; i++) {
+            int op = opcode[i];
+            switch (op) {
+                case FUNCTION:
+                    frame = b[i];
+                    out.append(names.get(a[i])).append(':');
+                    break;
+                case END:
+                    out.append("return");
+                    break;
+                case LABEL:
+                    out.append(String.valueOf(a[i])).append(':');
+                    break;
+                case GOTO:
+                    out.append(tab1).append("goto ").append(String.valueOf(a[i]));
+                    break;
+                case IF_FALSE:
+                case IF_TRUE:
+                    out.append(tab1).append(op == IF_FALSE ? "ifFalse " : "ifTrue ");
+                    printOperand(out, frame, a[i], true);
+                    out.append(" goto ").append(String.valueOf(b[i]));
+                    break;
+                case POP:
+                    out.append(tab1).append("pop ");
+                    printOperand(out, frame, a[i], true);
+                    break;
+                case PUSH:
+                    out.append(tab1).append("push ");
+                    printOperand(out, frame, a[i], true);
+                    break;
+                case CALL:
+                    out.append(tab1).append("call ").append(names.get(a[i])).append(' ')
+                            .append(String.valueOf(b[i]));
+                    break;
+                case RETURN:
+                case PRINT:
+                    out.append(tab1).append(op == RETURN ? "return " : "print ");
+                    printOperand(out, frame, a[i], true);
+                    break;
+                case ASSIGN:
+                    out.append(tab1);
+                    printOperand(out, frame, a[i], true);
+                    out.append('=');
+                    // Временная переменная копируется без "$" ($E5=E4), в переменную - с "$" (x=$E4)
+                    printOperand(out, frame, b[i], kind(a[i]) == VAR);
+                    break;
+                case NEG:
+                case NOT:
+                    out.append(tab1);
+                    printOperand(out, frame, a[i], true);
+                    out.append('=').append(operations[op]);
+                    printOperand(out, frame, b[i], false);
+                    break;
+                default:
+                    out.append(tab1);
+                    printOperand(out, frame, a[i], true);
+                    out.append('=');
+                    printOperand(out, frame, b[i], true);
+                    out.append(operations[op]);
+                    printOperand(out, frame, c[i], true);
+                    break;
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Печать операнда-значения
+     *
+     * @param out     приемник
+     * @param frame   номер кадра функции
+     * @param operand операнд
+     * @param dollar  печатать временную переменную с "$"
+     * @throws IOException ошибка записи
+     */
+    private void printOperand(Appendable out, int frame, int operand, boolean dollar) throws IOException {
+        int index = index(operand);
+        switch (kind(operand)) {
+            case TEMP:
+                if (dollar)
+                    out.append('$');
+                out.append('E').append(String.valueOf(index));
+                break;
+            case VAR:
+                out.append(frames.get(frame).get(index));
+                break;
+            default:
+                out.append(String.valueOf(constants.get(index)));
+                break;
+        }
+    }
+
+    /**
+     * Перегрузка {@link java.lang.Object#toString()}
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        try {
+            print(result, 0, size);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return result.toString();
+    }
+}
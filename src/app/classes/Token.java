@@ -65,6 +65,24 @@ public class Token {
         return type;
     }
 
+    /**
+     * Получить строку, на которой расположен токен
+     * 
+     * @return номер строки
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Получить позицию в строке, на которой расположен токен
+     * 
+     * @return позиция в строке
+     */
+    public int getPos() {
+        return pos;
+    }
+
     public String getFullPosition() {
         return "string " + line + ", position " + pos;
     }
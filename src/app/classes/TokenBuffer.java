@@ -0,0 +1,445 @@
+package app.classes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Класс компактного хранилища токенов
+ * 
+ * Токены хранятся в параллельных массивах (тип, начало и длина в исходном
+ * тексте, строка, позиция, символ), объекты {@link Token} не создаются.
+ * Содержимое токена берется из исходного текста только по запросу. Имена
+ * (переменные и ключевые слова) при лексическом анализе заменяются номерами
+ * символов, так что каждое имя хранится один раз.
+ * 
+ * Комментарии не входят в последовательность токенов, которую читает парсер:
+ * они хранятся в отдельной таблице trivia вместе с номером токена, перед
+ * которым стоят. Пробельные символы не хранятся, а восстанавливаются из
+ * исходного текста по границам токенов ({@link #getLeadingTrivia(int)}).
+ */
+public class TokenBuffer implements TokenStream {
+    // Поля
+    private static final Token.Type[] types = Token.Type.values();
+    private CharSequence source;
+    // Переменные
+    private byte[] type = new byte[256];
+    private int[] start = new int[256];
+    private int[] length = new int[256];
+    private int[] line = new int[256];
+    private int[] pos = new int[256];
+    private int[] symbol = new int[256];
+    private int size;
+    private String[] names = new String[64];
+    private int namesCount;
+    private int[] namesTable = new int[128]; // номер символа + 1, 0 - пустая ячейка
+    private int[] triviaOwner = new int[16]; // номер токена, перед которым стоит комментарий
+    private int[] triviaStart = new int[16];
+    private int[] triviaLength = new int[16];
+    private int[] triviaLine = new int[16];
+    private int[] triviaPos = new int[16];
+    private int triviaCount;
+
+    /**
+     * Конструктор
+     * 
+     * @param source исходный текст
+     */
+    public TokenBuffer(CharSequence source) {
+        this.source = source;
+    }
+
+    /**
+     * Получить исходный текст
+     * 
+     * @return исходный текст
+     */
+    public CharSequence getSource() {
+        return source;
+    }
+
+    /**
+     * Добавить токен
+     * 
+     * @param tokenType тип токена
+     * @param from      начало содержимого в исходном тексте
+     * @param to        конец содержимого в исходном тексте
+     * @param tokenLine строка токена
+     * @param tokenPos  позиция токена в строке
+     * @param name      номер символа или -1
+     * @return номер токена
+     */
+    public int add(Token.Type tokenType, int from, int to, int tokenLine, int tokenPos, int name) {
+        if (size == type.length)
+            grow(size * 2);
+        type[size] = (byte) tokenType.ordinal();
+        start[size] = from;
+        length[size] = to - from;
+        line[size] = tokenLine;
+        pos[size] = tokenPos;
+        symbol[size] = name;
+        return size++;
+    }
+
+    /**
+     * Добавить все токены другого хранилища (например, разобранной отдельно
+     * части того же текста)
+     * 
+     * @param other      хранилище токенов
+     * @param offset     сдвиг начала токенов в исходном тексте
+     * @param lineOffset сдвиг номеров строк
+     * @param firstShift сдвиг позиций токенов первой строки
+     * @param names      номера символов этого хранилища по номерам символов
+     *                   другого
+     */
+    public void append(TokenBuffer other, int offset, int lineOffset, int firstShift, int[] names) {
+        final int count = other.size;
+        if (size + count > type.length)
+            grow(Math.max(size + count, size * 2));
+        for (int i = 0; i < other.triviaCount; i++) {
+            final int firstLine = other.triviaLine[i] == 1 ? firstShift : 0;
+            addTrivia(other.triviaStart[i] + offset, other.triviaStart[i] + other.triviaLength[i] + offset,
+                    other.triviaLine[i] + lineOffset, other.triviaPos[i] + firstLine);
+            triviaOwner[triviaCount - 1] = size + other.triviaOwner[i];
+        }
+        System.arraycopy(other.type, 0, type, size, count);
+        System.arraycopy(other.length, 0, length, size, count);
+        for (int i = 0; i < count; i++) {
+            start[size + i] = other.start[i] + offset;
+            line[size + i] = other.line[i] + lineOffset;
+            pos[size + i] = other.line[i] == 1 ? other.pos[i] + firstShift : other.pos[i];
+            symbol[size + i] = other.symbol[i] >= 0 ? names[other.symbol[i]] : -1;
+        }
+        size += count;
+    }
+
+    /**
+     * Добавить комментарий перед следующим токеном
+     * 
+     * @param from      начало содержимого в исходном тексте (после //)
+     * @param to        конец содержимого в исходном тексте
+     * @param tokenLine строка комментария
+     * @param tokenPos  позиция комментария в строке
+     */
+    public void addTrivia(int from, int to, int tokenLine, int tokenPos) {
+        if (triviaCount == triviaOwner.length) {
+            final int capacity = triviaCount * 2;
+            triviaOwner = Arrays.copyOf(triviaOwner, capacity);
+            triviaStart = Arrays.copyOf(triviaStart, capacity);
+            triviaLength = Arrays.copyOf(triviaLength, capacity);
+            triviaLine = Arrays.copyOf(triviaLine, capacity);
+            triviaPos = Arrays.copyOf(triviaPos, capacity);
+        }
+        triviaOwner[triviaCount] = size;
+        triviaStart[triviaCount] = from;
+        triviaLength[triviaCount] = to - from;
+        triviaLine[triviaCount] = tokenLine;
+        triviaPos[triviaCount] = tokenPos;
+        triviaCount++;
+    }
+
+    /**
+     * Получить количество комментариев
+     * 
+     * @return количество комментариев
+     */
+    public int getTriviaCount() {
+        return triviaCount;
+    }
+
+    /**
+     * Получить номер токена, перед которым стоит комментарий
+     * 
+     * @param trivia номер комментария
+     * @return номер токена (равен количеству токенов для комментариев в конце)
+     */
+    public int getTriviaOwner(int trivia) {
+        return triviaOwner[trivia];
+    }
+
+    /**
+     * Получить содержимое комментария (без //)
+     * 
+     * @param trivia номер комментария
+     * @return содержимое комментария
+     */
+    public String getTriviaText(int trivia) {
+        return source.subSequence(triviaStart[trivia], triviaStart[trivia] + triviaLength[trivia]).toString();
+    }
+
+    /**
+     * Получить комментарии перед токеном
+     * 
+     * @param index номер токена (или количество токенов для комментариев в
+     *              конце)
+     * @return комментарии в виде токенов COMMENT
+     */
+    public List<Token> getComments(int index) {
+        int low = 0;
+        int high = triviaCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (triviaOwner[middle] < index)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        List<Token> comments = new ArrayList<>();
+        for (int i = low; i < triviaCount && triviaOwner[i] == index; i++)
+            comments.add(new Token(Token.Type.COMMENT, getTriviaText(i), triviaLine[i], triviaPos[i]));
+        return comments;
+    }
+
+    /**
+     * Получить исходный текст между предыдущим токеном и токеном (пробельные
+     * символы и комментарии без потерь)
+     * 
+     * @param index номер токена (или количество токенов для текста в конце)
+     * @return часть исходного текста
+     */
+    public CharSequence getLeadingTrivia(int index) {
+        int from = 0;
+        if (index > 0)
+            from = start[index - 1] + length[index - 1] + (types[type[index - 1]] == Token.Type.STRING ? 1 : 0);
+        int to = source.length();
+        if (index < size)
+            to = start[index] - (types[type[index]] == Token.Type.STRING ? 1 : 0);
+        return source.subSequence(from, to);
+    }
+
+    /**
+     * Получить количество токенов
+     * 
+     * @return количество токенов
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean has(int index) {
+        return index < size;
+    }
+
+    @Override
+    public Token.Type getType(int index) {
+        return types[type[index]];
+    }
+
+    /**
+     * Получить начало содержимого токена в исходном тексте
+     * 
+     * @param index номер токена
+     * @return смещение в исходном тексте
+     */
+    public int getStart(int index) {
+        return start[index];
+    }
+
+    /**
+     * Получить длину содержимого токена в исходном тексте
+     * 
+     * @param index номер токена
+     * @return длина
+     */
+    public int getLength(int index) {
+        return length[index];
+    }
+
+    @Override
+    public int getLine(int index) {
+        return line[index];
+    }
+
+    @Override
+    public int getPos(int index) {
+        return pos[index];
+    }
+
+    /**
+     * Получить номер символа токена-имени
+     * 
+     * @param index номер токена
+     * @return номер символа или -1, если токен не является именем
+     */
+    public int getSymbol(int index) {
+        return symbol[index];
+    }
+
+    /**
+     * Получить исходный текст токена без копирования (для строк - без кавычек и
+     * без раскрытия escape-последовательностей, для комментариев - без //)
+     * 
+     * @param index номер токена
+     * @return часть исходного текста
+     */
+    public CharSequence getSequence(int index) {
+        return source.subSequence(start[index], start[index] + length[index]);
+    }
+
+    @Override
+    public String getText(int index) {
+        if (symbol[index] >= 0)
+            return names[symbol[index]];
+        if (types[type[index]] == Token.Type.STRING) {
+            final CharSequence text = getSequence(index);
+            return unescape(text, 0, text.length());
+        }
+        return getSequence(index).toString();
+    }
+
+    /**
+     * Получить символ имени, добавив его при необходимости
+     * 
+     * @param text исходный текст
+     * @param from начало имени
+     * @param to   конец имени
+     * @return номер символа
+     */
+    public int symbol(CharSequence text, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++)
+            hash = 31 * hash + text.charAt(i);
+        int mask = namesTable.length - 1;
+        int slot = slot(hash, mask);
+        while (namesTable[slot] != 0) {
+            String name = names[namesTable[slot] - 1];
+            if (equals(name, text, from, to))
+                return namesTable[slot] - 1;
+            slot = (slot + 1) & mask;
+        }
+        if (namesCount == names.length)
+            names = Arrays.copyOf(names, namesCount * 2);
+        names[namesCount] = text.subSequence(from, to).toString();
+        namesTable[slot] = ++namesCount;
+        if (namesCount * 2 > namesTable.length)
+            rehash();
+        return namesCount - 1;
+    }
+
+    /**
+     * Получить символ имени, добавив его при необходимости
+     * 
+     * @param name имя
+     * @return номер символа
+     */
+    public int symbol(String name) {
+        return symbol(name, 0, name.length());
+    }
+
+    /**
+     * Получить имя символа
+     * 
+     * @param name номер символа
+     * @return имя
+     */
+    public String getName(int name) {
+        return names[name];
+    }
+
+    /**
+     * Получить количество символов
+     * 
+     * @return количество символов
+     */
+    public int getSymbolsCount() {
+        return namesCount;
+    }
+
+    /**
+     * Получить токены в виде списка объектов
+     * 
+     * @return список токенов
+     */
+    public List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            tokens.add(getToken(i));
+        return tokens;
+    }
+
+    /**
+     * Раскрытие escape-последовательностей строки (\" \n \t, остальные \ остаются
+     * как есть)
+     * 
+     * @param text исходный текст
+     * @param from начало строки после открывающей "
+     * @param to   позиция закрывающей "
+     * @return строка
+     */
+    public static String unescape(CharSequence text, int from, int to) {
+        final StringBuilder buffer = new StringBuilder(to - from);
+        int i = from;
+        while (i < to) {
+            char current = text.charAt(i);
+            if (current == '\\' && i + 1 < to) {
+                switch (text.charAt(i + 1)) {
+                    case '"':
+                        buffer.append('"');
+                        i += 2;
+                        continue;
+                    case 'n':
+                        buffer.append('\n');
+                        i += 2;
+                        continue;
+                    case 't':
+                        buffer.append('\t');
+                        i += 2;
+                        continue;
+                }
+            }
+            buffer.append(current);
+            i++;
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Сравнение имени с частью текста
+     */
+    private static boolean equals(String name, CharSequence text, int from, int to) {
+        if (name.length() != to - from)
+            return false;
+        for (int i = 0; i < name.length(); i++)
+            if (name.charAt(i) != text.charAt(from + i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Ячейка хеш-таблицы имен (младшие биты хеша коротких похожих имен почти
+     * совпадают, поэтому хеш перемешивается)
+     */
+    private static int slot(int hash, int mask) {
+        hash *= 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Увеличить массивы токенов
+     * 
+     * @param capacity новая емкость
+     */
+    private void grow(int capacity) {
+        type = Arrays.copyOf(type, capacity);
+        start = Arrays.copyOf(start, capacity);
+        length = Arrays.copyOf(length, capacity);
+        line = Arrays.copyOf(line, capacity);
+        pos = Arrays.copyOf(pos, capacity);
+        symbol = Arrays.copyOf(symbol, capacity);
+    }
+
+    /**
+     * Увеличение хеш-таблицы имен
+     */
+    private void rehash() {
+        namesTable = new int[namesTable.length * 2];
+        int mask = namesTable.length - 1;
+        for (int n = 0; n < namesCount; n++) {
+            int slot = slot(names[n].hashCode(), mask);
+            while (namesTable[slot] != 0)
+                slot = (slot + 1) & mask;
+            namesTable[slot] = n + 1;
+        }
+    }
+}
\ No newline at end of file
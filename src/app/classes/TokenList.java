@@ -0,0 +1,64 @@
+package app.classes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Класс последовательности токенов поверх списка объектов {@link Token}
+ * 
+ * Комментарии из списка в последовательность не попадают.
+ */
+public class TokenList implements TokenStream {
+    // Поля
+    private List<Token> tokens;
+
+    /**
+     * Конструктор
+     * 
+     * @param tokens список токенов
+     */
+    public TokenList(List<Token> tokens) {
+        this.tokens = tokens;
+        for (Token token : tokens)
+            if (token.getType() == Token.Type.COMMENT) {
+                this.tokens = new ArrayList<>(tokens);
+                this.tokens.removeIf(t -> t.getType() == Token.Type.COMMENT);
+                break;
+            }
+    }
+
+    @Override
+    public boolean has(int index) {
+        return index < tokens.size();
+    }
+
+    @Override
+    public Token.Type getType(int index) {
+        return tokens.get(index).getType();
+    }
+
+    @Override
+    public String getText(int index) {
+        return tokens.get(index).getText();
+    }
+
+    @Override
+    public int getLine(int index) {
+        return tokens.get(index).getLine();
+    }
+
+    @Override
+    public int getPos(int index) {
+        return tokens.get(index).getPos();
+    }
+
+    @Override
+    public String getFullPosition(int index) {
+        return tokens.get(index).getFullPosition();
+    }
+
+    @Override
+    public Token getToken(int index) {
+        return tokens.get(index);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,95 @@
+package app.classes;
+
+/**
+ * Интерфейс последовательности токенов, читаемой парсером по номеру токена
+ */
+public interface TokenStream {
+    /**
+     * Есть ли токен с номером index
+     * 
+     * @param index номер токена
+     * @return true, если токен есть, false, если достигнут конец
+     */
+    boolean has(int index);
+
+    /**
+     * Получить тип токена
+     * 
+     * @param index номер токена
+     * @return тип токена
+     */
+    Token.Type getType(int index);
+
+    /**
+     * Получить содержимое токена
+     * 
+     * @param index номер токена
+     * @return содержимое токена
+     */
+    String getText(int index);
+
+    /**
+     * Получить строку, на которой расположен токен
+     * 
+     * @param index номер токена
+     * @return номер строки
+     */
+    int getLine(int index);
+
+    /**
+     * Получить позицию в строке, на которой расположен токен
+     * 
+     * @param index номер токена
+     * @return позиция в строке
+     */
+    int getPos(int index);
+
+    /**
+     * Получить положение токена в формате строки
+     * 
+     * @param index номер токена
+     * @return строка и позиция токена
+     */
+    default String getFullPosition(int index) {
+        return "string " + getLine(index) + ", position " + getPos(index);
+    }
+
+    /**
+     * Получить токен в виде объекта
+     * 
+     * @param index номер токена
+     * @return токен
+     */
+    default Token getToken(int index) {
+        return new Token(getType(index), getText(index), getLine(index), getPos(index));
+    }
+
+    /**
+     * Можно ли читать токены в любом порядке (вся последовательность доступна,
+     * а не только окно последних токенов потока)
+     * 
+     * @return true, если токены можно перечитывать с начала
+     */
+    default boolean isRewindable() {
+        return true;
+    }
+
+    /**
+     * Получить исходный текст (для фрагментов в сообщениях об ошибках)
+     * 
+     * @return исходный текст или null, если он недоступен
+     */
+    default CharSequence getSource() {
+        return null;
+    }
+
+    /**
+     * Получить начало содержимого токена в исходном тексте
+     * 
+     * @param index номер токена
+     * @return смещение в исходном тексте или -1, если оно неизвестно
+     */
+    default int getStart(int index) {
+        return -1;
+    }
+}
\ No newline at end of file
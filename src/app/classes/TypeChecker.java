@@ -0,0 +1,283 @@
+package app.classes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import app.classes.exceptions.SemanticException;
+
+/**
+ * Класс проверки типов
+ * 
+ * Отдельный проход по операторам, разобранным в режиме
+ * {@link Parser.Mode#COMPILE}, где значения выражений неизвестны. Каждому
+ * выражению, переменной и возвращаемому значению функции сопоставляется
+ * переменная типа; операции, присваивания, условия, вызовы и возвраты
+ * связывают их равенствами, которые решаются объединением классов
+ * (union-find). Переменная функции имеет один тип, тип аргумента выводится из
+ * его использования и из вызовов. После проверки каждое выражение, переменная
+ * области видимости ({@link Scope}) и функция получают статический тип
+ * ({@link Expression.Type}); тип null остается, только если программа его не
+ * определяет (например, аргумент функции, которую никто не вызывает, только
+ * печатается).
+ */
+public class TypeChecker {
+    // Свойства
+    private List<Function> functions;
+    // Переменные
+    private ArrayList<Integer> parents = new ArrayList<>();
+    private ArrayList<Expression.Type> types = new ArrayList<>();
+    private Map<String, Function> functionTable = new HashMap<>();
+    private Map<Function, Integer> slots = new IdentityHashMap<>();
+    private Map<Expression, Integer> terms = new IdentityHashMap<>();
+    private Map<Expression, Function> additions = new LinkedHashMap<>();
+    private Function function;
+
+    /**
+     * Конструктор
+     * 
+     * @param functions функции программы
+     */
+    public TypeChecker(List<Function> functions) {
+        this.functions = functions;
+    }
+
+    /**
+     * Проверить типы и записать их в выражения, области видимости и функции
+     * 
+     * @throws SemanticException несовместимые типы
+     */
+    public void check() throws SemanticException {
+        // Переменные типов: ячейки кадра каждой функции, затем возвращаемое значение
+        for (Function f : functions) {
+            functionTable.putIfAbsent(f.getFunctionVariable(), f);
+            slots.put(f, parents.size());
+            for (int slot = 0; slot <= f.getScope().size(); slot++)
+                term(null);
+        }
+        for (Function f : functions) {
+            function = f;
+            for (Expression e : f.getArguments().values())
+                expression(e);
+            for (Statement s : f.getStatements()) {
+                statement(s);
+                for (Statement inner : s.getStatements())
+                    statement(inner);
+            }
+        }
+        // Сложение определено для чисел и строк
+        for (Map.Entry<Expression, Function> entry : additions.entrySet()) {
+            Expression.Type type = types.get(find(terms.get(entry.getKey())));
+            function = entry.getValue();
+            if (type == Expression.Type.BOOL)
+                throw error("operation \"+\" not defined for type \"%s\"", type);
+        }
+        for (Map.Entry<Expression, Integer> entry : terms.entrySet())
+            entry.getKey().setType(types.get(find(entry.getValue())));
+        for (Function f : functions) {
+            Scope scope = f.getScope();
+            int base = slots.get(f);
+            for (int slot = 0; slot < scope.size(); slot++)
+                scope.setType(slot, types.get(find(base + slot)));
+            f.setReturnType(types.get(find(base + scope.size())));
+        }
+    }
+
+    /**
+     * Проверить оператор (без внутренних операторов)
+     * 
+     * @param state оператор
+     * @throws SemanticException несовместимые типы
+     */
+    private void statement(Statement state) throws SemanticException {
+        switch (state.getKind()) {
+            case ASSIGN:
+                String var = state.getVariable();
+                unify(variable(function, function.getScope().lookup(var)), expression(state.getExpression()),
+                        "variable \"%s\"", var);
+                break;
+            case PRINT:
+                expression(state.getExpression());
+                break;
+            case RETURN:
+                unify(variable(function, function.getScope().size()), expression(state.getExpression()),
+                        "returned value");
+                break;
+            case CALL:
+                Function called = functionTable.get(state.getVariable());
+                for (Map.Entry<String, Expression> entry : state.getArguments().entrySet())
+                    unify(variable(called, called.getScope().lookup(entry.getKey())), expression(entry.getValue()),
+                            "argument \"%s\" of function \"%s\"", entry.getKey(), called.getFunctionVariable());
+                break;
+            default:
+                unify(term(Expression.Type.BOOL), expression(state.getExpression()), "condition");
+                break;
+        }
+    }
+
+    /**
+     * Вывести тип выражения вместе с вложенными
+     * 
+     * @param expr выражение
+     * @return переменная типа выражения
+     * @throws SemanticException несовместимые типы
+     */
+    private int expression(Expression expr) throws SemanticException {
+        for (Expression e : expr.getExpressions())
+            node(e);
+        return node(expr);
+    }
+
+    /**
+     * Вывести тип выражения, операнды которого уже проверены
+     * 
+     * @param expr выражение
+     * @return переменная типа выражения
+     * @throws SemanticException несовместимые типы
+     */
+    private int node(Expression expr) throws SemanticException {
+        Integer known = terms.get(expr);
+        if (known != null)
+            return known;
+        int result;
+        switch (expr.getKind()) {
+            case VARIABLE:
+                result = variable(function, expr.getSlot());
+                break;
+            case CONSTANT:
+                Object value = expr.getResult();
+                result = term(value instanceof Integer ? Expression.Type.INT
+                        : value instanceof Boolean ? Expression.Type.BOOL : Expression.Type.STRING);
+                break;
+            case COPY:
+                result = terms.get(expr.getLeft());
+                break;
+            case UNARY:
+                Expression.Type operand = "!".equals(expr.getOperation()) ? Expression.Type.BOOL : Expression.Type.INT;
+                result = term(operand);
+                unify(result, terms.get(expr.getLeft()), "operation \"%s\"", expr.getOperation());
+                break;
+            default:
+                result = binary(expr, terms.get(expr.getLeft()), terms.get(expr.getRight()));
+                break;
+        }
+        terms.put(expr, result);
+        return result;
+    }
+
+    /**
+     * Вывести тип двуместной операции
+     * 
+     * @param expr  выражение операции
+     * @param left  переменная типа левого операнда
+     * @param right переменная типа правого операнда
+     * @return переменная типа результата
+     * @throws SemanticException несовместимые типы
+     */
+    private int binary(Expression expr, int left, int right) throws SemanticException {
+        String operation = expr.getOperation();
+        switch (operation) {
+            case "+":
+                unify(left, right, "operation \"+\"");
+                additions.put(expr, function);
+                return left;
+            case "==":
+            case "!=":
+                unify(left, right, "operation \"%s\"", operation);
+                return term(Expression.Type.BOOL);
+            case "&&":
+            case "||":
+                unify(term(Expression.Type.BOOL), left, "operation \"%s\"", operation);
+                unify(term(Expression.Type.BOOL), right, "operation \"%s\"", operation);
+                return term(Expression.Type.BOOL);
+            default:
+                unify(term(Expression.Type.INT), left, "operation \"%s\"", operation);
+                unify(term(Expression.Type.INT), right, "operation \"%s\"", operation);
+                boolean comparison = !"-".equals(operation) && !"*".equals(operation) && !"/".equals(operation);
+                return term(comparison ? Expression.Type.BOOL : Expression.Type.INT);
+        }
+    }
+
+    /**
+     * Получить переменную типа ячейки кадра функции
+     * 
+     * @param f    функция
+     * @param slot номер ячейки (номер, равный размеру кадра, - возвращаемое
+     *             значение)
+     * @return переменная типа
+     */
+    private int variable(Function f, int slot) {
+        return slots.get(f) + slot;
+    }
+
+    /**
+     * Создать переменную типа
+     * 
+     * @param type известный тип или null
+     * @return переменная типа
+     */
+    private int term(Expression.Type type) {
+        parents.add(parents.size());
+        types.add(type);
+        return parents.size() - 1;
+    }
+
+    /**
+     * Найти представителя класса переменной типа (со сжатием путей)
+     * 
+     * @param term переменная типа
+     * @return представитель класса
+     */
+    private int find(int term) {
+        int root = term;
+        while (parents.get(root) != root)
+            root = parents.get(root);
+        while (parents.get(term) != root) {
+            int next = parents.get(term);
+            parents.set(term, root);
+            term = next;
+        }
+        return root;
+    }
+
+    /**
+     * Объединить переменные типов: их типы должны совпадать
+     * 
+     * @param expected переменная ожидаемого типа
+     * @param actual   переменная фактического типа
+     * @param format   формат описания места проверки
+     * @param args     аргументы формата
+     * @throws SemanticException типы различны
+     */
+    private void unify(int expected, int actual, String format, Object... args) throws SemanticException {
+        expected = find(expected);
+        actual = find(actual);
+        if (expected == actual)
+            return;
+        Expression.Type expectedType = types.get(expected);
+        Expression.Type actualType = types.get(actual);
+        if (expectedType != null && actualType != null && expectedType != actualType)
+            throw error("waited type \"%s\" instead of \"%s\" for %s", expectedType, actualType,
+                    String.format(format, args));
+        parents.set(actual, expected);
+        if (expectedType == null)
+            types.set(expected, actualType);
+    }
+
+    /**
+     * Создать семантическую ошибку в текущей функции
+     * 
+     * @param format формат сообщения
+     * @param args   аргументы формата
+     * @return исключение
+     */
+    private SemanticException error(String format, Object... args) {
+        Object[] all = new Object[args.length + 1];
+        System.arraycopy(args, 0, all, 0, args.length);
+        all[args.length] = function.getFunctionVariable();
+        return new SemanticException(new Diagnostic(Diagnostic.Kind.SEMANTIC, format + " in function \"%s\"", all));
+    }
+}
\ No newline at end of file
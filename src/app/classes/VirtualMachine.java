@@ -0,0 +1,577 @@
+package app.classes;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import app.classes.exceptions.ExecutionException;
+
+/**
+ * Класс регистровой виртуальной машины
+ *
+ * Выполняет трехадресный код ({@link ThreeAddressCode}), полученный в режиме
+ * {@link Parser.Mode#COMPILE}. При загрузке переменные и временные переменные $E
+ * каждой функции отображаются на регистры ее кадра, метки - на номера
+ * инструкций, а имена функций - на их номера. Кадры вызовов располагаются в
+ * заранее выделенном стеке регистров.
+ */
+public class VirtualMachine {
+    // Коды операций машины
+    private static final int MOVE = 0; // r[a]=r[b]
+    private static final int LOADK = 1; // r[a]=k[b]
+    private static final int NEG = 2;
+    private static final int NOT = 3;
+    private static final int ADD = 4;
+    private static final int SUB = 5;
+    private static final int MUL = 6;
+    private static final int DIV = 7;
+    private static final int LT = 8;
+    private static final int LTEQ = 9;
+    private static final int GT = 10;
+    private static final int GTEQ = 11;
+    private static final int EQEQ = 12;
+    private static final int EXCLEQ = 13;
+    private static final int AMPAMP = 14;
+    private static final int BARBAR = 15;
+    private static final int GOTO = 16; // pc=a
+    private static final int IF_FALSE = 17; // if !r[a] pc=b
+    private static final int IF_TRUE = 18; // if r[a] pc=b
+    private static final int PUSH = 19;
+    private static final int POP = 20;
+    private static final int CALL = 21; // вызов функции a
+    private static final int RETURN = 22; // возврат r[a]
+    private static final int END = 23; // возврат без значения
+    private static final int PRINT = 24;
+    // Поля
+    private static final int DEFAULT_STACK_SIZE = 1 << 16;
+    private static final int DEFAULT_CALL_DEPTH = 1 << 12;
+    private int[] op;
+    private int[] a;
+    private int[] b;
+    private int[] c;
+    private Object[] constants;
+    private String[] functionNames;
+    private int[] functionEntry;
+    private int[] frameSize;
+    private Map<String, Integer> functions = new HashMap<>();
+    // Переменные
+    private Object[] registers;
+    private Object[] arguments;
+    private int[] callPc;
+    private int[] callBase;
+    private int[] callFunction;
+    private PrintStream out = System.out;
+    private long executed;
+    private long elapsed;
+
+    /**
+     * Конструктор
+     *
+     * @param code трехадресный код программы
+     * @throws ExecutionException ошибка загрузки кода
+     */
+    public VirtualMachine(ThreeAddressCode code) throws ExecutionException {
+        this(code, DEFAULT_STACK_SIZE, DEFAULT_CALL_DEPTH);
+    }
+
+    /**
+     * Конструктор
+     *
+     * @param code      трехадресный код программы
+     * @param stackSize размер стека регистров (суммарный размер кадров)
+     * @param callDepth максимальная глубина вызовов
+     * @throws ExecutionException ошибка загрузки кода
+     */
+    public VirtualMachine(ThreeAddressCode code, int stackSize, int callDepth) throws ExecutionException {
+        load(code);
+        registers = new Object[stackSize];
+        arguments = new Object[stackSize];
+        callPc = new int[callDepth];
+        callBase = new int[callDepth];
+        callFunction = new int[callDepth];
+    }
+
+    /**
+     * Задать поток вывода оператора print
+     *
+     * @param out поток вывода
+     */
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Получить количество инструкций, выполненных последним запуском
+     *
+     * @return количество инструкций
+     */
+    public long getExecutedInstructions() {
+        return executed;
+    }
+
+    /**
+     * Получить производительность последнего запуска
+     *
+     * @return инструкций в секунду
+     */
+    public double getInstructionsPerSecond() {
+        if (elapsed == 0)
+            return 0;
+        return executed * 1e9 / elapsed;
+    }
+
+    /**
+     * Загрузка трехадресного кода: распределение регистров и разрешение меток
+     *
+     * @param code трехадресный код
+     * @throws ExecutionException ошибка загрузки кода
+     */
+    private void load(ThreeAddressCode code) throws ExecutionException {
+        int size = code.size();
+        op = new int[size];
+        a = new int[size];
+        b = new int[size];
+        c = new int[size];
+        ArrayList<Object> constantsList = new ArrayList<>();
+        Map<Object, Integer> constantsIndex = new HashMap<>();
+        // Функции
+        ArrayList<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (code.getOpcode(i) == ThreeAddressCode.FUNCTION) {
+                String name = code.getName(code.getA(i));
+                if (functions.put(name, starts.size()) != null)
+                    throw new ExecutionException(String.format("function \"%s\" defined twice", name));
+                starts.add(i);
+            }
+        }
+        int count = starts.size();
+        functionNames = new String[count];
+        functionEntry = new int[count];
+        frameSize = new int[count];
+        int length = 0;
+        for (int f = 0; f < count; f++) {
+            int from = starts.get(f) + 1;
+            int to = f + 1 < count ? starts.get(f + 1) : size;
+            functionNames[f] = code.getName(code.getA(starts.get(f)));
+            functionEntry[f] = length;
+            // Регистры: сначала ячейки кадра переменных, затем временные переменные $E
+            int minTemp = Integer.MAX_VALUE;
+            int maxTemp = -1;
+            Map<Integer, Integer> labels = new HashMap<>();
+            int pc = length;
+            for (int i = from; i < to; i++) {
+                int opcode = code.getOpcode(i);
+                if (opcode == ThreeAddressCode.LABEL) {
+                    if (labels.put(code.getA(i), pc) != null)
+                        throw new ExecutionException(String.format("label %d defined twice in function \"%s\"",
+                                code.getA(i), functionNames[f]));
+                    continue;
+                }
+                pc++;
+                for (int operand : valueOperands(code, i)) {
+                    int index = ThreeAddressCode.index(operand);
+                    if (ThreeAddressCode.kind(operand) == ThreeAddressCode.TEMP) {
+                        minTemp = Math.min(minTemp, index);
+                        maxTemp = Math.max(maxTemp, index);
+                    }
+                }
+            }
+            int vars = code.getFrameSize(code.getB(starts.get(f)));
+            int temps = maxTemp < 0 ? 0 : maxTemp - minTemp + 1;
+            frameSize[f] = vars + temps;
+            // Перевод инструкций
+            for (int i = from; i < to; i++) {
+                int opcode = code.getOpcode(i);
+                if (opcode == ThreeAddressCode.LABEL)
+                    continue;
+                int x = code.getA(i);
+                int y = code.getB(i);
+                int z = code.getC(i);
+                switch (opcode) {
+                    case ThreeAddressCode.GOTO:
+                        op[length] = GOTO;
+                        a[length] = target(labels, x, functionNames[f]);
+                        break;
+                    case ThreeAddressCode.IF_FALSE:
+                    case ThreeAddressCode.IF_TRUE:
+                        op[length] = opcode == ThreeAddressCode.IF_FALSE ? IF_FALSE : IF_TRUE;
+                        a[length] = register(x, vars, minTemp);
+                        b[length] = target(labels, y, functionNames[f]);
+                        break;
+                    case ThreeAddressCode.CALL:
+                        op[length] = CALL;
+                        a[length] = -1 - x; // разрешается после загрузки всех функций
+                        b[length] = y;
+                        break;
+                    case ThreeAddressCode.END:
+                        op[length] = END;
+                        break;
+                    case ThreeAddressCode.PUSH:
+                    case ThreeAddressCode.POP:
+                    case ThreeAddressCode.RETURN:
+                    case ThreeAddressCode.PRINT:
+                        op[length] = opcode == ThreeAddressCode.PUSH ? PUSH
+                                : opcode == ThreeAddressCode.POP ? POP
+                                        : opcode == ThreeAddressCode.RETURN ? RETURN : PRINT;
+                        a[length] = register(x, vars, minTemp);
+                        break;
+                    case ThreeAddressCode.ASSIGN:
+                        a[length] = register(x, vars, minTemp);
+                        if (ThreeAddressCode.kind(y) == ThreeAddressCode.CONST) {
+                            Object value = code.getConstant(ThreeAddressCode.index(y));
+                            Integer index = constantsIndex.get(value);
+                            if (index == null) {
+                                index = constantsList.size();
+                                constantsList.add(value);
+                                constantsIndex.put(value, index);
+                            }
+                            op[length] = LOADK;
+                            b[length] = index;
+                        } else {
+                            op[length] = MOVE;
+                            b[length] = register(y, vars, minTemp);
+                        }
+                        break;
+                    case ThreeAddressCode.NEG:
+                    case ThreeAddressCode.NOT:
+                        op[length] = opcode == ThreeAddressCode.NEG ? NEG : NOT;
+                        a[length] = register(x, vars, minTemp);
+                        b[length] = register(y, vars, minTemp);
+                        break;
+                    default:
+                        op[length] = ADD + (opcode - ThreeAddressCode.ADD);
+                        a[length] = register(x, vars, minTemp);
+                        b[length] = register(y, vars, minTemp);
+                        c[length] = register(z, vars, minTemp);
+                        break;
+                }
+                length++;
+            }
+            // Функция без завершающего return
+            if (length == functionEntry[f] || op[length - 1] != END) {
+                op = ensure(op, length);
+                a = ensure(a, length);
+                b = ensure(b, length);
+                c = ensure(c, length);
+                op[length++] = END;
+            }
+        }
+        // Разрешение вызовов
+        for (int pc = 0; pc < length; pc++) {
+            if (op[pc] == CALL) {
+                String name = code.getName(-1 - a[pc]);
+                Integer f = functions.get(name);
+                if (f == null)
+                    throw new ExecutionException(String.format("function \"%s\" not declared", name));
+                a[pc] = f;
+            }
+        }
+        op = Arrays.copyOf(op, length);
+        constants = constantsList.toArray();
+    }
+
+    /**
+     * Выполнить функцию
+     *
+     * @param function имя функции
+     * @param args     аргументы функции
+     * @return значение, возвращенное функцией, или null
+     * @throws ExecutionException ошибка выполнения
+     */
+    public Object run(String function, Object... args) throws ExecutionException {
+        Integer f = functions.get(function);
+        if (f == null)
+            throw new ExecutionException(String.format("function \"%s\" not declared", function));
+        for (int i = 0; i < args.length; i++)
+            arguments[i] = args[args.length - 1 - i];
+        long start = System.nanoTime();
+        try {
+            return execute(f, args.length);
+        } finally {
+            elapsed = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Цикл выполнения инструкций
+     *
+     * @param function номер функции
+     * @param sp       количество аргументов в стеке аргументов
+     * @return возвращенное значение
+     * @throws ExecutionException ошибка выполнения
+     */
+    private Object execute(int function, int sp) throws ExecutionException {
+        final int[] op = this.op;
+        final int[] a = this.a;
+        final int[] b = this.b;
+        final int[] c = this.c;
+        final Object[] r = registers;
+        final Object[] k = constants;
+        final Object[] args = arguments;
+        int pc = functionEntry[function];
+        int base = 0;
+        int depth = 0;
+        int current = function;
+        long count = 0;
+        Object returned = null;
+        if (frameSize[current] > r.length)
+            throw new ExecutionException("stack overflow");
+        // Кадр очищается при входе: переменные без присваивания равны null
+        Arrays.fill(r, 0, frameSize[current], null);
+        try {
+            while (true) {
+                count++;
+                switch (op[pc]) {
+                    case MOVE:
+                        r[base + a[pc]] = r[base + b[pc]];
+                        pc++;
+                        break;
+                    case LOADK:
+                        r[base + a[pc]] = k[b[pc]];
+                        pc++;
+                        break;
+                    case NEG:
+                        r[base + a[pc]] = -integer(r[base + b[pc]]);
+                        pc++;
+                        break;
+                    case NOT:
+                        r[base + a[pc]] = !bool(r[base + b[pc]]);
+                        pc++;
+                        break;
+                    case ADD: {
+                        Object x = r[base + b[pc]];
+                        Object y = r[base + c[pc]];
+                        if (x instanceof String && y instanceof String)
+                            r[base + a[pc]] = (String) x + (String) y;
+                        else
+                            r[base + a[pc]] = integer(x) + integer(y);
+                        pc++;
+                        break;
+                    }
+                    case SUB:
+                        r[base + a[pc]] = integer(r[base + b[pc]]) - integer(r[base + c[pc]]);
+                        pc++;
+                        break;
+                    case MUL:
+                        r[base + a[pc]] = integer(r[base + b[pc]]) * integer(r[base + c[pc]]);
+                        pc++;
+                        break;
+                    case DIV: {
+                        int y = integer(r[base + c[pc]]);
+                        if (y == 0)
+                            throw new ExecutionException("/ by zero");
+                        r[base + a[pc]] = integer(r[base + b[pc]]) / y;
+                        pc++;
+                        break;
+                    }
+                    case LT:
+                        r[base + a[pc]] = integer(r[base + b[pc]]) < integer(r[base + c[pc]]);
+                        pc++;
+                        break;
+                    case LTEQ:
+                        r[base + a[pc]] = integer(r[base + b[pc]]) <= integer(r[base + c[pc]]);
+                        pc++;
+                        break;
+                    case GT:
+                        r[base + a[pc]] = integer(r[base + b[pc]]) > integer(r[base + c[pc]]);
+                        pc++;
+                        break;
+                    case GTEQ:
+                        r[base + a[pc]] = integer(r[base + b[pc]]) >= integer(r[base + c[pc]]);
+                        pc++;
+                        break;
+                    case EQEQ:
+                        r[base + a[pc]] = equal(r[base + b[pc]], r[base + c[pc]]);
+                        pc++;
+                        break;
+                    case EXCLEQ:
+                        r[base + a[pc]] = !equal(r[base + b[pc]], r[base + c[pc]]);
+                        pc++;
+                        break;
+                    case AMPAMP:
+                        r[base + a[pc]] = bool(r[base + b[pc]]) & bool(r[base + c[pc]]);
+                        pc++;
+                        break;
+                    case BARBAR:
+                        r[base + a[pc]] = bool(r[base + b[pc]]) | bool(r[base + c[pc]]);
+                        pc++;
+                        break;
+                    case GOTO:
+                        pc = a[pc];
+                        break;
+                    case IF_FALSE:
+                        pc = bool(r[base + a[pc]]) ? pc + 1 : b[pc];
+                        break;
+                    case IF_TRUE:
+                        pc = bool(r[base + a[pc]]) ? b[pc] : pc + 1;
+                        break;
+                    case PUSH:
+                        args[sp++] = r[base + a[pc]];
+                        pc++;
+                        break;
+                    case POP:
+                        if (sp == 0)
+                            throw new ExecutionException(
+                                    String.format("missing argument of function \"%s\"", functionNames[current]));
+                        r[base + a[pc]] = args[--sp];
+                        pc++;
+                        break;
+                    case CALL: {
+                        if (depth == callPc.length)
+                            throw new ExecutionException("call stack overflow");
+                        int callee = a[pc];
+                        callPc[depth] = pc + 1;
+                        callBase[depth] = base;
+                        callFunction[depth] = current;
+                        depth++;
+                        base += frameSize[current];
+                        if (base + frameSize[callee] > r.length)
+                            throw new ExecutionException("stack overflow");
+                        Arrays.fill(r, base, base + frameSize[callee], null);
+                        current = callee;
+                        pc = functionEntry[callee];
+                        break;
+                    }
+                    case RETURN:
+                    case END:
+                        if (op[pc] == RETURN)
+                            returned = r[base + a[pc]];
+                        if (depth == 0)
+                            return returned;
+                        depth--;
+                        pc = callPc[depth];
+                        base = callBase[depth];
+                        current = callFunction[depth];
+                        returned = null;
+                        break;
+                    case PRINT:
+                        out.println(r[base + a[pc]]);
+                        pc++;
+                        break;
+                    default:
+                        throw new ExecutionException(String.format("unknown instruction %d", op[pc]));
+                }
+            }
+        } finally {
+            executed = count;
+        }
+    }
+
+    /**
+     * Получить значение int
+     *
+     * @param value значение регистра
+     * @return целое число
+     * @throws ExecutionException значение не является int
+     */
+    private static int integer(Object value) throws ExecutionException {
+        if (value instanceof Integer)
+            return (Integer) value;
+        throw new ExecutionException(String.format("waited class \"Integer\" instead of \"%s\"", value));
+    }
+
+    /**
+     * Получить значение bool
+     *
+     * @param value значение регистра
+     * @return логическое значение
+     * @throws ExecutionException значение не является bool
+     */
+    private static boolean bool(Object value) throws ExecutionException {
+        if (value instanceof Boolean)
+            return (Boolean) value;
+        throw new ExecutionException(String.format("waited class \"Boolean\" instead of \"%s\"", value));
+    }
+
+    /**
+     * Сравнение значений одного типа
+     *
+     * @param x левое значение
+     * @param y правое значение
+     * @return true, если значения равны
+     * @throws ExecutionException значения разных типов
+     */
+    private static boolean equal(Object x, Object y) throws ExecutionException {
+        if (x == null || y == null || x.getClass() != y.getClass())
+            throw new ExecutionException(String.format("Undefined class result \"%s==%s\"", x, y));
+        return x.equals(y);
+    }
+
+    /**
+     * Получить список операндов-значений инструкции
+     *
+     * @param code трехадресный код
+     * @param i    номер инструкции
+     * @return операнды-значения
+     */
+    private static int[] valueOperands(ThreeAddressCode code, int i) {
+        switch (code.getOpcode(i)) {
+            case ThreeAddressCode.IF_FALSE:
+            case ThreeAddressCode.IF_TRUE:
+            case ThreeAddressCode.POP:
+            case ThreeAddressCode.PUSH:
+            case ThreeAddressCode.RETURN:
+            case ThreeAddressCode.PRINT:
+                return new int[] { code.getA(i) };
+            case ThreeAddressCode.ASSIGN:
+            case ThreeAddressCode.NEG:
+            case ThreeAddressCode.NOT:
+                return new int[] { code.getA(i), code.getB(i) };
+            case ThreeAddressCode.FUNCTION:
+            case ThreeAddressCode.END:
+            case ThreeAddressCode.LABEL:
+            case ThreeAddressCode.GOTO:
+            case ThreeAddressCode.CALL:
+                return new int[0];
+            default:
+                return new int[] { code.getA(i), code.getB(i), code.getC(i) };
+        }
+    }
+
+    /**
+     * Получить номер регистра кадра для операнда
+     *
+     * @param operand операнд (переменная или временная переменная)
+     * @param vars    количество переменных
+     * @param minTemp наименьший номер временной переменной функции
+     * @return номер регистра
+     */
+    private static int register(int operand, int vars, int minTemp) {
+        int index = ThreeAddressCode.index(operand);
+        if (ThreeAddressCode.kind(operand) == ThreeAddressCode.VAR)
+            return index;
+        return vars + index - minTemp;
+    }
+
+    /**
+     * Получить номер инструкции метки
+     *
+     * @param labels   метки функции
+     * @param label    метка
+     * @param function имя функции
+     * @return номер инструкции
+     * @throws ExecutionException метка не задана
+     */
+    private static int target(Map<Integer, Integer> labels, int label, String function)
+            throws ExecutionException {
+        Integer pc = labels.get(label);
+        if (pc == null)
+            throw new ExecutionException(String.format("label %d not defined in function \"%s\"", label, function));
+        return pc;
+    }
+
+    /**
+     * Увеличить массив при необходимости
+     *
+     * @param array  массив
+     * @param length требуемый индекс
+     * @return массив, содержащий индекс length
+     */
+    private static int[] ensure(int[] array, int length) {
+        if (length < array.length)
+            return array;
+        return Arrays.copyOf(array, length + 1);
+    }
+}
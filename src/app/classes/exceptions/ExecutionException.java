@@ -0,0 +1,10 @@
+package app.classes.exceptions;
+
+public class ExecutionException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public ExecutionException(final String message) {
+        super(message);
+    }
+}
\ No newline at end of file
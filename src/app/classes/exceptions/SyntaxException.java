@@ -1,10 +1,34 @@
 package app.classes.exceptions;
 
+import app.classes.Diagnostic;
+
 public class SyntaxException extends Exception {
 
     private static final long serialVersionUID = 1L;
 
+    private transient Diagnostic diagnostic;
+
     public SyntaxException(final String message) {
         super(message);
     }
+
+    /**
+     * Ошибка во входной программе: сообщение строится при чтении, стек вызовов
+     * не сохраняется (он указывает на анализатор, а не на место ошибки)
+     * 
+     * @param diagnostic запись об ошибке
+     */
+    public SyntaxException(final Diagnostic diagnostic) {
+        super(null, null, false, false);
+        this.diagnostic = diagnostic;
+    }
+
+    public Diagnostic getDiagnostic() {
+        return diagnostic;
+    }
+
+    @Override
+    public String getMessage() {
+        return diagnostic == null ? super.getMessage() : diagnostic.getMessage();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package app.classes.exceptions;
+
+public class UncheckedLexicalException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedLexicalException(final LexicalException cause) {
+        super(null, cause, false, false);
+    }
+
+    @Override
+    public String getMessage() {
+        return getCause().getMessage();
+    }
+
+    @Override
+    public LexicalException getCause() {
+        return (LexicalException) super.getCause();
+    }
+}
\ No newline at end of file
@@ -2,18 +2,34 @@ package tests;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import app.classes.Compilation;
 import app.classes.IntermediateCode;
 import app.classes.Lexer;
 import app.classes.Parser;
+import app.classes.PipelinedLexer;
+import app.classes.StreamingLexer;
+import app.classes.ThreeAddressCode;
+import app.classes.exceptions.LexicalException;
+import app.classes.exceptions.SyntaxException;
 
 public class IntermediateCodeTests {
 
@@ -42,7 +58,7 @@ public class IntermediateCodeTests {
             String expected = ""; 
             try {
                 parser.parse();
-                actual = IntermediateCode.getICode().replace("\r", "");
+                actual = parser.getICode().replace("\r", "");
                 //System.out.println(actual);
                 expected = programs.get(i + 1).replace("\r", "") + "\n";
             } catch (Exception ex) {
@@ -53,4 +69,193 @@ public class IntermediateCodeTests {
             System.out.println("Тест " + (i / 2) + "\n" + expr + "\n" + actual);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void compileLoopsTest() throws Exception {
+        String expr = "def test()\n{\n    w = 1\n    while (w < 1000000)\n    {\n        w = w + 1\n    }\n"
+                + "    do\n    {\n        w = w - 1\n    } while (w > 0)\n}";
+        Parser parser = new Parser(new Lexer(expr).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        String actual = parser.getICode();
+        String expected = "test:\n  $E0=1\n  w=$E0\n0:\n  $E1=w\n  $E2=1000000\n  $E3=$E1<$E2\n  ifFalse $E3 goto 1\n"
+                + "  $E0=1\n  $E4=$E1+$E0\n  w=$E4\n  goto 0\n1:\n"
+                + "2:\n  $E5=w\n  $E0=1\n  $E6=$E5-$E0\n  w=$E6\n  $E7=w\n  $E8=0\n  $E9=$E7>$E8\n"
+                + "  ifTrue $E9 goto 2\nreturn\n";
+        assertEquals("Ошибка в тесте компиляции циклов", expected, actual);
+        System.out.println("Тест компиляции циклов\n" + expr + "\n" + actual);
+    }
+
+    @Test
+    public void compileUnaryTest() throws Exception {
+        // При компиляции значение переменной неизвестно: "-" и "!" применяются к null
+        String expr = "def test(x)\n{\n    y = -x\n    c = x > 0\n    while (!c)\n    {\n        c = !c\n    }\n"
+                + "    return -(y) + 1\n}";
+        Parser parser = new Parser(new Lexer(expr).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        String expected = "test:\n  pop x\n  $E1=x\n  $E2=-E1\n  y=$E2\n  $E3=0\n  $E4=$E1>$E3\n  c=$E4\n"
+                + "0:\n  $E5=c\n  $E6=!E5\n  ifFalse $E6 goto 1\n  c=$E6\n  goto 0\n1:\n"
+                + "  $E7=y\n  $E8=E7\n  $E9=-E8\n  $E10=1\n  $E11=$E9+$E10\n  return $E11\nreturn\n";
+        assertEquals("Ошибка в тесте компиляции одноместных операций", expected, parser.getICode());
+    }
+
+    @Test
+    public void sharedExpressionsTest() throws Exception {
+        // Одинаковые константы и операции вычисляются один раз, чтение x - до присваивания x
+        String expr = "def test()\n{\n    x = 1 + 2\n    y = x + 1\n    x = 2\n    print(x + 1)\n"
+                + "    print(1 + 2 == y)\n}";
+        Parser parser = new Parser(new Lexer(expr).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        String expected = "test:\n  $E0=1\n  $E1=2\n  $E2=$E0+$E1\n  x=$E2\n  $E3=x\n  $E4=$E3+$E0\n  y=$E4\n"
+                + "  x=$E1\n  $E5=x\n  $E6=$E5+$E0\n  print $E6\n  $E7=y\n  $E8=$E2==$E7\n  print $E8\nreturn\n";
+        assertEquals("Ошибка в тесте общих выражений", expected, parser.getICode());
+    }
+
+    @Test
+    public void streamICodeTest() throws Exception {
+        for (int i = 0; i < programs.size(); i = i + 2) {
+            String expr = programs.get(i);
+            Parser buffered = new Parser(new Lexer(expr).getTokens());
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            Parser streamed = new Parser(new Lexer(expr).getTokens(), Parser.Mode.EVALUATE,
+                    new IntermediateCode(Channels.newChannel(stream)));
+            try {
+                buffered.parse();
+            } catch (Exception ex) {
+                continue;
+            }
+            streamed.parse();
+            assertEquals("Ошибка в тесте " + (i / 2), buffered.getICode(),
+                    new String(stream.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void streamingLexerTest() throws Exception {
+        for (int i = 0; i < programs.size(); i = i + 2) {
+            String expr = programs.get(i);
+            Parser buffered = new Parser(new Lexer(expr).getTokens(), Parser.Mode.COMPILE);
+            try {
+                buffered.parse();
+            } catch (Exception ex) {
+                continue;
+            }
+            // Разбор в режиме компиляции возвращается не более чем на два токена
+            Parser streamed = new Parser(new StreamingLexer(new StringReader(expr), 16, 4),
+                    new Compilation(Parser.Mode.COMPILE, new IntermediateCode()));
+            streamed.parse();
+            assertEquals("Ошибка в тесте " + (i / 2), buffered.getICode(), streamed.getICode());
+        }
+    }
+
+    @Test
+    public void pipelinedLexerTest() throws Exception {
+        for (int i = 0; i < programs.size(); i = i + 2) {
+            String expr = programs.get(i);
+            Parser buffered = new Parser(new Lexer(expr).getTokens(), Parser.Mode.COMPILE);
+            buffered.parse();
+            // Кольцо из восьми токенов заполняется и освобождается много раз
+            try (PipelinedLexer tokens = new PipelinedLexer(new StreamingLexer(new StringReader(expr)), 8)) {
+                Parser pipelined = new Parser(tokens, new Compilation(Parser.Mode.COMPILE, new IntermediateCode()));
+                pipelined.parse();
+                assertEquals("Ошибка в тесте " + (i / 2), buffered.getICode(), pipelined.getICode());
+            }
+        }
+        try (PipelinedLexer tokens = new PipelinedLexer(new StringReader("def main()\n{\n    a = #\n}"))) {
+            new Parser(tokens, new Compilation(Parser.Mode.COMPILE, new IntermediateCode())).parse();
+            Assert.fail("Ошибка в тесте лексической ошибки");
+        } catch (LexicalException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Unidentified symbol \"#\": string 3"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void pipelinedLexerCloseTest() throws Exception {
+        // Разбор, прерванный ошибкой, останавливает поток лексера, ждущий места в кольце
+        StringBuilder program = new StringBuilder("def main()\n{\n    a = = 1\n}\n");
+        for (int i = 0; i < 100; i++)
+            program.append("def f").append(i).append("()\n{\n    print(").append(i).append(")\n}\n");
+        int before = lexerThreads();
+        try {
+            new Parser(new PipelinedLexer(new StreamingLexer(new StringReader(program.toString())), 8),
+                    new Compilation(Parser.Mode.COMPILE, new IntermediateCode())).parse();
+            Assert.fail("Ошибка в тесте закрытия");
+        } catch (SyntaxException e) {
+        }
+        while (lexerThreads() > before)
+            Thread.sleep(10);
+        // Записанные токены доступны парсеру, пока лексер ждет продолжения входа
+        PipedWriter writer = new PipedWriter();
+        try (PipelinedLexer tokens = new PipelinedLexer(new PipedReader(writer))) {
+            writer.write("def main()\n{\n    print(1)\n");
+            writer.flush();
+            Assert.assertTrue(tokens.has(8));
+            assertEquals("1", tokens.getText(7));
+            writer.close();
+        }
+    }
+
+    /**
+     * Получить количество работающих потоков лексера
+     *
+     * @return количество потоков
+     */
+    private static int lexerThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            if (thread.getName().equals("lexer") && thread.isAlive())
+                count++;
+        return count;
+    }
+
+    @Test
+    public void threeAddressCodeTest() throws Exception {
+        Parser parser = new Parser(new Lexer("def test()\n{\n    x = 1 + 2\n    print(x)\n}").getTokens(),
+                Parser.Mode.COMPILE);
+        parser.parse();
+        ThreeAddressCode code = parser.getIntermediateCode().getCode();
+        int[] expected = { ThreeAddressCode.FUNCTION, ThreeAddressCode.ASSIGN, ThreeAddressCode.ASSIGN,
+                ThreeAddressCode.ADD, ThreeAddressCode.ASSIGN, ThreeAddressCode.ASSIGN, ThreeAddressCode.PRINT,
+                ThreeAddressCode.END };
+        assertEquals("Ошибка в количестве инструкций", expected.length, code.size());
+        for (int i = 0; i < expected.length; i++)
+            assertEquals("Ошибка в инструкции " + i, expected[i], code.getOpcode(i));
+        assertEquals(ThreeAddressCode.temp(2), code.getA(3));
+        assertEquals(ThreeAddressCode.temp(0), code.getB(3));
+        assertEquals(ThreeAddressCode.temp(1), code.getC(3));
+        assertEquals("x", code.getLocalName(code.getB(0), ThreeAddressCode.index(code.getA(4))));
+        assertEquals(1, code.getConstant(ThreeAddressCode.index(code.getB(1))));
+        assertEquals("test:\n  $E0=1\n  $E1=2\n  $E2=$E0+$E1\n  x=$E2\n  $E3=x\n  print $E3\nreturn\n",
+                code.toString());
+    }
+
+    @Test
+    public void parallelCompileTest() throws Exception {
+        List<String> sequential = new ArrayList<>();
+        for (int i = 0; i < programs.size(); i = i + 2)
+            sequential.add(compile(programs.get(i)));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 20; round++) {
+                List<Future<String>> results = new ArrayList<>();
+                for (int i = 0; i < programs.size(); i = i + 2) {
+                    String expr = programs.get(i);
+                    results.add(executor.submit(() -> compile(expr)));
+                }
+                for (int i = 0; i < results.size(); i++)
+                    assertEquals("Ошибка в тесте " + i, sequential.get(i), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String compile(String expr) {
+        try {
+            Parser parser = new Parser(new Lexer(expr).getTokens());
+            parser.parse();
+            return parser.getICode();
+        } catch (Exception ex) {
+            return ex.toString();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import app.classes.JvmBackend;
+import app.classes.Lexer;
+import app.classes.Parser;
+import app.classes.VirtualMachine;
+import app.classes.exceptions.ExecutionException;
+import app.classes.exceptions.SemanticException;
+
+public class JvmBackendTests {
+
+    private static final String program = "def countdown(n)\n{\n    if (n > 0)\n    {\n        print(n)\n"
+            + "        countdown(n - 1)\n    }\n}\n"
+            + "def sum(n)\n{\n    s = 0\n    i = 0\n    while (i < n)\n    {\n        i = i + 1\n"
+            + "        s = s + i\n    }\n    return s\n}\n"
+            + "def main()\n{\n    countdown(2)\n    b = !(1 > 2)\n    print(b)\n    return 5 > 2 && !false\n}\n"
+            + "def divide(a b)\n{\n    return a / b\n}";
+
+    private JvmBackend compile(String program) throws Exception {
+        Parser parser = new Parser(new Lexer(program).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        return new JvmBackend(parser.getIntermediateCode().getCode());
+    }
+
+    @Test
+    public void runTest() throws Throwable {
+        JvmBackend backend = compile(program);
+        // Тест 1
+        PrintStream out = System.out;
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Object actual;
+        try {
+            System.setOut(new PrintStream(stream, true));
+            actual = backend.run("main");
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals("Ошибка в тесте 1", true, actual);
+        assertEquals("Ошибка в тесте 1", "2\n1\ntrue\n", stream.toString().replace("\r", ""));
+        // Тест 2
+        assertEquals("Ошибка в тесте 2", 500500, backend.run("sum", 1000));
+        assertEquals("Ошибка в тесте 2", 500500, (int) backend.getMethod("sum").invokeExact(1000));
+        // Тест 3
+        assertEquals("Ошибка в тесте 3", 3, backend.run("divide", 7, 2));
+        assertEquals("Ошибка в тесте 3", 3, (int) backend.getMethod("divide").invokeExact(7, 2));
+        try {
+            backend.run("divide", 1, 0);
+            Assert.fail("Ошибка в тесте 3");
+        } catch (ExecutionException e) {
+            assertEquals("Ошибка в тесте 3", "/ by zero", e.getMessage());
+        }
+        // Тест 4
+        try {
+            compile("def test()\n{\n    print(\"text\")\n}");
+            Assert.fail("Ошибка в тесте 4");
+        } catch (SemanticException e) {
+            System.out.println("Тест 4\n" + e.toString());
+        }
+        // Тест 5: аргументы связываются с параметрами по порядку объявления
+        backend = compile("def f(b a)\n{\n    print(b)\n    print(a)\n    return b - a\n}\n"
+                + "def main()\n{\n    f(10 3)\n}");
+        stream.reset();
+        try {
+            System.setOut(new PrintStream(stream, true));
+            backend.run("main");
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals("Ошибка в тесте 5", "10\n3\n", stream.toString().replace("\r", ""));
+        assertEquals("Ошибка в тесте 5", 7, backend.run("f", 10, 3));
+        assertEquals("Ошибка в тесте 5", 7, (int) backend.getMethod("f").invokeExact(10, 3));
+        // Тест 6: функция без return возвращает null, как в виртуальной машине
+        stream.reset();
+        try {
+            System.setOut(new PrintStream(stream, true));
+            assertNull("Ошибка в тесте 6", backend.run("main"));
+            assertNull("Ошибка в тесте 6", compile(program).run("countdown", 2));
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    @Test
+    public void crossCheckTest() throws Throwable {
+        // Тест 1: переменная, присвоенная не на всех путях, в виртуальной машине равна null,
+        // а back-end такую функцию не переводит
+        String maybe = "def f(n)\n{\n    if (n > 0)\n    {\n        v = n\n    }\n    print(v)\n}\n";
+        Parser parser = new Parser(new Lexer(maybe).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        VirtualMachine vm = new VirtualMachine(parser.getIntermediateCode().getCode());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        vm.setOut(new PrintStream(stream, true));
+        vm.run("f", 0);
+        assertEquals("Ошибка в тесте 1", "null\n", stream.toString().replace("\r", ""));
+        try {
+            compile(maybe);
+            Assert.fail("Ошибка в тесте 1");
+        } catch (SemanticException e) {
+            assertEquals("Ошибка в тесте 1", "variable \"v\" may be read before assignment in function \"f\"",
+                    e.getMessage());
+        }
+        // Тест 2: с веткой else оба back-end печатают одно и то же
+        String always = maybe.replace("    }\n    print", "    }\n    else\n    {\n        v = 0\n    }\n    print");
+        parser = new Parser(new Lexer(always).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        vm = new VirtualMachine(parser.getIntermediateCode().getCode());
+        stream.reset();
+        vm.setOut(new PrintStream(stream, true));
+        vm.run("f", 0);
+        vm.run("f", 4);
+        String expected = stream.toString();
+        JvmBackend backend = compile(always);
+        PrintStream out = System.out;
+        stream.reset();
+        try {
+            System.setOut(new PrintStream(stream, true));
+            backend.run("f", 0);
+            backend.run("f", 4);
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals("Ошибка в тесте 2", "0\n4\n", expected.replace("\r", ""));
+        assertEquals("Ошибка в тесте 2", expected, stream.toString());
+        // Тест 3: функция, которая возвращает значение не на всех путях
+        String partial = "def sign(n)\n{\n    if (n > 0)\n    {\n        return 1\n    }\n}\n"
+                + "def negative(n)\n{\n    sign(n - 1)\n    if (n < 0)\n    {\n        return 0\n    }\n}";
+        parser = new Parser(new Lexer(partial).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        vm = new VirtualMachine(parser.getIntermediateCode().getCode());
+        backend = compile(partial);
+        for (int n = -1; n <= 2; n++) {
+            assertEquals("Ошибка в тесте 3", vm.run("sign", n), backend.run("sign", n));
+            assertEquals("Ошибка в тесте 3", vm.run("negative", n), backend.run("negative", n));
+        }
+        assertNull("Ошибка в тесте 3", backend.run("sign", 0));
+        assertEquals("Ошибка в тесте 3", 0, backend.run("negative", -1));
+    }
+}
@@ -4,6 +4,13 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -12,8 +19,13 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import app.classes.IncrementalLexer;
 import app.classes.Lexer;
+import app.classes.ParallelLexer;
+import app.classes.StreamingLexer;
+import app.classes.Token;
 import app.classes.exceptions.LexicalException;
+import app.classes.exceptions.UncheckedLexicalException;
 
 public class LexerTests {
     
@@ -106,4 +118,188 @@ public class LexerTests {
             System.out.println("Тест 10\n" + expr + "\n" + e.toString());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void operatorsTest() throws LexicalException {
+        String expr = "a<=b>=c==d!=e&&f||!g<h>i=j // note\ntrue1 tx1\nz";
+        Lexer lexer = new Lexer(expr);
+        List<Token> tokens = lexer.getTokens();
+        String actual = "";
+        for (Token t : tokens)
+            actual += t + " | " + t.getFullPosition() + "\n";
+        String expected = "VAR a | string 1, position 1\nLTEQ <= | string 1, position 3\n"
+                + "VAR b | string 1, position 4\nGTEQ >= | string 1, position 6\n"
+                + "VAR c | string 1, position 7\nEQEQ == | string 1, position 9\n"
+                + "VAR d | string 1, position 10\nEXCLEQ != | string 1, position 12\n"
+                + "VAR e | string 1, position 13\nAMPAMP && | string 1, position 15\n"
+                // Слова на t и f читаются дважды (сначала как boolean)
+                + "VAR f | string 1, position 17\nBARBAR || | string 1, position 19\n"
+                + "EXCL ! | string 1, position 20\nVAR g | string 1, position 21\n"
+                + "LT < | string 1, position 22\nVAR h | string 1, position 23\n"
+                + "GT > | string 1, position 24\nVAR i | string 1, position 25\n"
+                + "EQ = | string 1, position 26\nVAR j | string 1, position 27\n"
+                + "BOOL true | string 2, position 5\n"
+                + "INT 1 | string 2, position 6\nVAR tx1 | string 3, position 0\n"
+                + "VAR z | string 3, position 2\n";
+        assertEquals("Ошибка в тесте операторов", expected, actual);
+        // Комментарий хранится в таблице trivia перед токеном true
+        Token comment = lexer.getTokenBuffer().getComments(20).get(0);
+        assertEquals("COMMENT  note | string 2, position 0", comment + " | " + comment.getFullPosition());
+        assertEquals(" // note\n", lexer.getTokenBuffer().getLeadingTrivia(20).toString());
+        assertEquals("COMMENT  note\n", new Lexer("// note").printTokens());
+        assertEquals(0, new Lexer("// note", false).getTokenBuffer().getTriviaCount());
+        try {
+            new Lexer("a & b");
+            Assert.fail("Ошибка в тесте одиночного &");
+        } catch (LexicalException e) {
+            assertEquals("Unidentified symbol \"&\" of operator: string 1, position 2\na & b\n  ^", e.getMessage());
+            assertEquals(0, e.getStackTrace().length);
+        }
+    }
+
+    @Test
+    public void streamingLexerTest() {
+        for (int i = 0; i < programs.size(); i++) {
+            String expr = programs.get(i);
+            String expected;
+            try {
+                expected = new Lexer(expr, false).printTokens();
+            } catch (LexicalException e) {
+                expected = "LexicalException";
+            }
+            // Буфер меньше токенов и окно из четырех токенов
+            StreamingLexer lexer = new StreamingLexer(new StringReader(expr), 4, 4);
+            String actual = "";
+            try {
+                for (int j = 0; lexer.has(j); j++)
+                    actual += lexer.getType(j).toString() + ' ' + lexer.getText(j) + '\n';
+            } catch (UncheckedLexicalException e) {
+                actual = "LexicalException";
+            }
+            assertEquals("Ошибка в тесте " + (i + 1), expected, actual);
+        }
+        StreamingLexer lexer = new StreamingLexer(new StringReader("a b c d e f"), 4, 4);
+        Assert.assertTrue(lexer.has(5));
+        assertEquals("f", lexer.getText(5));
+        try {
+            lexer.getText(0);
+            Assert.fail("Ошибка в тесте окна");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.toString(), true);
+        }
+    }
+
+    @Test
+    public void mappedFileTest() throws IOException, LexicalException {
+        String expr = "def main()\r\n{\r\n    s = \"строка \\\"в кавычках\\\"\"\tx = 1 // комментарий\ty\r\n}";
+        Path file = Files.createTempFile("lexer", ".cat");
+        try {
+            Files.write(file, expr.getBytes(StandardCharsets.UTF_8));
+            List<Token> expected = new Lexer(expr).getTokens();
+            List<Token> actual;
+            try (FileChannel channel = FileChannel.open(file)) {
+                actual = new Lexer(channel).getTokens();
+            }
+            assertEquals("Ошибка в количестве токенов", expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals("Ошибка в токене " + i, expected.get(i).toString(), actual.get(i).toString());
+                assertEquals("Ошибка в позиции токена " + i, expected.get(i).getFullPosition(),
+                        actual.get(i).getFullPosition());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void mappedFileErrorTest() throws IOException {
+        // Символ ошибки и фрагмент строки считаются в декодированных символах
+        String expr = "def main()\n{\n    s = \"" + "ж".repeat(45) + "\" ж = 1\n}";
+        Path file = Files.createTempFile("lexer", ".cat");
+        try {
+            Files.write(file, expr.getBytes(StandardCharsets.UTF_8));
+            String expected = null;
+            try {
+                new Lexer(expr);
+                Assert.fail("Ошибка в тесте ошибки");
+            } catch (LexicalException e) {
+                expected = e.getMessage();
+            }
+            try (FileChannel channel = FileChannel.open(file)) {
+                new Lexer(channel);
+                Assert.fail("Ошибка в тесте ошибки");
+            } catch (LexicalException e) {
+                assertEquals("Ошибка в сообщении", expected, e.getMessage());
+                Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Unidentified symbol \"ж\": string 3"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void parallelLexerTest() throws LexicalException {
+        String expr = "";
+        for (int i = 0; i < 20; i++)
+            expr += "def f" + i + "(a b)\r\n{\r\n    // тело\tfx\r\n    tx = a + \"def\\n\"\r\n"
+                    + "    return true\r\n}\r\n";
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Token> expected = new Lexer(expr).getTokens();
+            List<Token> actual = new ParallelLexer(expr, pool, 8).getTokens();
+            assertEquals("Ошибка в количестве токенов", expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals("Ошибка в токене " + i, expected.get(i).toString(), actual.get(i).toString());
+                assertEquals("Ошибка в позиции токена " + i, expected.get(i).getFullPosition(),
+                        actual.get(i).getFullPosition());
+            }
+            // Ошибка в одной из частей сообщается так же, как при последовательном разборе
+            String error = expr + "def g()\r\n{\r\n    a = #\r\n}\r\n" + expr;
+            try {
+                new Lexer(error);
+                Assert.fail("Ошибка в тесте ошибки");
+            } catch (LexicalException e) {
+                try {
+                    new ParallelLexer(error, pool, 8);
+                    Assert.fail("Ошибка в тесте ошибки");
+                } catch (LexicalException p) {
+                    assertEquals(e.getMessage(), p.getMessage());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void incrementalLexerTest() throws LexicalException {
+        String expr = "";
+        for (int i = 0; i < 20; i++)
+            expr += "def f" + i + "(a b)\r\n{\r\n    tx = a + \"def\\n\" // тело\r\n    return true\r\n}\r\n";
+        IncrementalLexer lexer = new IncrementalLexer(expr);
+        // Вставка, удаление и замена посередине текста, перенос строки и строка
+        int[][] edits = { { 300, 0 }, { 305, 3 }, { 310, 1 }, { 0, 0 }, { expr.length() - 4, 2 } };
+        String[] inserted = { "x = 1\r\n", "", "\"ab\"", "c", "\r\n}" };
+        for (int i = 0; i < edits.length; i++) {
+            expr = expr.substring(0, edits[i][0]) + inserted[i] + expr.substring(edits[i][0] + edits[i][1]);
+            lexer.edit(edits[i][0], edits[i][1], inserted[i]);
+            assertEquals("Ошибка в тексте " + i, expr, lexer.getSource());
+            Assert.assertTrue("Ошибка в количестве разобранных токенов " + i, lexer.getRelexed() < 10);
+            List<Token> expected = new Lexer(expr).getTokens();
+            assertEquals("Ошибка в количестве токенов " + i, expected.size(), lexer.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals("Ошибка в токене " + j, expected.get(j).toString(), lexer.getToken(j).toString());
+                assertEquals("Ошибка в позиции токена " + j, expected.get(j).getFullPosition(),
+                        lexer.getFullPosition(j));
+            }
+        }
+        // После лексической ошибки следующее изменение разбирает текст заново
+        try {
+            lexer.edit(0, 0, "#");
+            Assert.fail("Ошибка в тесте лексической ошибки");
+        } catch (LexicalException e) {
+            lexer.edit(0, 1, "");
+            assertEquals(new Lexer(expr).getTokens().size(), lexer.size());
+        }
+    }
+}
@@ -5,14 +5,26 @@ import static org.junit.Assert.assertEquals;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import app.classes.Compilation;
+import app.classes.Diagnostic;
+import app.classes.Expression;
+import app.classes.Function;
+import app.classes.IntermediateCode;
 import app.classes.Lexer;
 import app.classes.Parser;
+import app.classes.Scope;
+import app.classes.Statement;
+import app.classes.TokenBuffer;
+import app.classes.exceptions.SemanticException;
+import app.classes.exceptions.SyntaxException;
 
 public class ParserTests {
 
@@ -51,4 +63,231 @@ public class ParserTests {
             System.out.println("Тест " + (i / 2) + "\n" + expr + "\n" + actual);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void compileFunctionCallsTest() throws Exception {
+        String expr = "def fact(n)\n{\n    if (n > 1)\n    {\n        fact(n - 1)\n    }\n    return n\n}\n"
+                + "def main()\n{\n    fact(5)\n}";
+        Parser parser = new Parser(new Lexer(expr).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        String actual = parser.printFunctions();
+        String expected = "F0 -> def fact ( E0 ) { S1 S2 } \n  E0 -> null\n"
+                + "  S1 -> if ( E3 ) { S0 }\n    E1 -> null\n    E2 -> 1\n    E3 -> E1>E2 = null>1 = null\n"
+                + "    S0 -> F0 = fact ( E4 ) { } \n    E4 -> E1-E2 = null-1 = null\n"
+                + "  S2 -> return E1\n    E1 -> null\n"
+                + "F1 -> def main ( ) { S3 } \n  S3 -> F0 = fact ( E5 ) { } \n    E5 -> 5\n";
+        assertEquals("Ошибка в тесте компиляции вызовов", expected, actual);
+        System.out.println("Тест компиляции вызовов\n" + expr + "\n" + actual);
+    }
+
+    @Test
+    public void commentsTest() throws Exception {
+        // Комментарии в любом месте не видны парсеру
+        String expr = "// program\ndef fact(n) // header\n{ // body\n    if (n > // compare\n 1)\n    {\n"
+                + "        fact(n - // argument\n 1)\n    }\n    return n // result\n}\n// end";
+        Parser parser = new Parser(new Lexer(expr).getTokenBuffer(),
+                new Compilation(Parser.Mode.COMPILE, new IntermediateCode()));
+        parser.parse();
+        Parser plain = new Parser(new Lexer(expr.replaceAll("//[^\n]*", "")).getTokens(), Parser.Mode.COMPILE);
+        plain.parse();
+        assertEquals("Ошибка в тесте комментариев", plain.printFunctions(), parser.printFunctions());
+        assertEquals("Ошибка в тесте комментариев", plain.getICode(), parser.getICode());
+    }
+
+    @Test
+    public void expressionTraversalTest() throws Exception {
+        Compilation compilation = new Compilation();
+        Expression a = new Expression(compilation, 1);
+        Expression b = new Expression(compilation, 2);
+        Expression c = new Expression(compilation, 3);
+        Expression sum = new Expression(compilation, "+", a, new Expression(compilation, "-", b));
+        Expression product = new Expression(compilation, "*", sum, new Expression(compilation, "(", c, ")"));
+        String actual = "";
+        for (Expression e : product.getExpressions())
+            actual += e.getName() + " ";
+        assertEquals("Ошибка в порядке обхода", "E0 E1 E3 E4 E2 E5 ", actual);
+
+        int n = 100000;
+        Expression chain = new Expression(compilation, 0);
+        for (int i = 1; i <= n; i++)
+            chain = new Expression(compilation, "+", chain, new Expression(compilation, i));
+        int count = 0;
+        for (Expression e : chain.getExpressions())
+            count++;
+        assertEquals("Ошибка в количестве вложенных выражений", 2 * n, count);
+    }
+
+    @Test
+    public void nestedParenthesesTest() throws Exception {
+        int n = 20000;
+        StringBuilder program = new StringBuilder("def main() {\n    return ");
+        for (int i = 0; i < n; i++)
+            program.append('(');
+        program.append('1');
+        for (int i = 0; i < n; i++)
+            program.append(")+1");
+        program.append("\n}");
+        Parser parser = new Parser(new Lexer(program.toString()).getTokenBuffer());
+        List<Function> functions = parser.parse();
+        assertEquals("Ошибка в результате вложенных скобок", n + 1, ((Expression) functions.get(0).getStatements().get(0).getResult()).getResult());
+        // Сравнения на равенство не продолжают друг друга: разбор выражения останавливается на втором ==
+        try {
+            new Parser(new Lexer("def main() {\n    return 1 == 1 == true\n}").getTokenBuffer()).parse();
+            Assert.fail("Ошибка в тесте ==");
+        } catch (SyntaxException ex) {
+            assertEquals("waited \"}\" after \"1\": string 2, position 18", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void nestedStatementsTest() throws Exception {
+        Compilation compilation = new Compilation();
+        int depth = 60;
+        Statement state = new Statement(compilation, "x", "=", new Expression(compilation, 1));
+        Statement innermost = state;
+        for (int i = 1; i < depth; i++) {
+            ArrayList<Statement> ifStates = new ArrayList<>();
+            ifStates.add(state);
+            state = new Statement(compilation, new Expression(compilation, true), ifStates, new ArrayList<>());
+        }
+        assertEquals("Ошибка в количестве вложенных операторов", 1, state.getChildren().size());
+        List<Statement> flattened = new ArrayList<>();
+        for (Statement s : state.getStatements())
+            flattened.add(s);
+        assertEquals("Ошибка в количестве внутренних операторов", depth - 1, flattened.size());
+        assertEquals(innermost, flattened.get(0));
+        assertEquals(state.getChildren().get(0), flattened.get(depth - 2));
+        assertEquals("    E1 -> true\n    S0 -> x=E0 = 1\n    E0 -> 1\n", flattened.get(1).printStatement());
+    }
+
+    @Test
+    public void tokenBufferTest() throws Exception {
+        for (int i = 0; i < programs.size(); i = i + 2) {
+            String expr = programs.get(i);
+            String expected;
+            String actual;
+            try {
+                Parser parser = new Parser(new Lexer(expr).getTokens());
+                parser.parse();
+                expected = parser.printFunctions();
+            } catch (Exception ex) {
+                expected = ex.toString();
+            }
+            try {
+                Parser parser = new Parser(new Lexer(expr).getTokenBuffer());
+                parser.parse();
+                actual = parser.printFunctions();
+            } catch (Exception ex) {
+                actual = ex.toString();
+            }
+            assertEquals("Ошибка в тесте " + (i / 2), expected, actual);
+        }
+        TokenBuffer buffer = new Lexer("x = \"a\\tb\"\nx = x + 10").getTokenBuffer();
+        assertEquals(8, buffer.size());
+        assertEquals(buffer.getSymbol(0), buffer.getSymbol(3));
+        assertEquals(buffer.getSymbol(0), buffer.getSymbol(5));
+        assertEquals("x", buffer.getName(buffer.getSymbol(0)));
+        assertEquals("a\tb", buffer.getText(2));
+        assertEquals("a\\tb", buffer.getSequence(2).toString());
+        assertEquals("10", buffer.getText(7));
+        assertEquals(-1, buffer.getSymbol(7));
+    }
+
+    @Test
+    public void diagnosticsTest() throws Exception {
+        try {
+            new Parser(new Lexer("def main() {\n    print(x)\n}").getTokenBuffer()).parse();
+            Assert.fail("Ошибка в тесте диагностики");
+        } catch (SemanticException ex) {
+            assertEquals("variable \"x\" not initialized: string 2, position 12", ex.getMessage());
+            assertEquals(0, ex.getStackTrace().length);
+            Diagnostic diagnostic = ex.getDiagnostic();
+            assertEquals(Diagnostic.Kind.SEMANTIC, diagnostic.getKind());
+            assertEquals(2, diagnostic.getLine());
+            assertEquals("    print(x)\n          ^", diagnostic.getExcerpt());
+        }
+    }
+
+    @Test
+    public void validateTest() throws Exception {
+        String program = "def main() {\n    x = 1\n    print(y)\n    if x) {\n        print(1)\n    }\n"
+                + "    x = + \n    print(x\n}\ndef f( {\n}\ndef g() {\n    z = 2\n    return q\n}";
+        String expected = "SEMANTIC variable \"y\" not initialized: string 3, position 12\n"
+                + "SYNTAX waited \"(\" after \"if\": string 4, position 7\n"
+                + "SYNTAX unknown expression \"print\": string 8, position 10\n"
+                + "SYNTAX waited \")\" instead of \"x\": string 9, position 0\n"
+                + "SYNTAX waited \"VAR\" or \")\": string 10, position 8\n"
+                + "SEMANTIC variable \"q\" not initialized: string 15, position 0\n";
+        for (Parser.Mode mode : Parser.Mode.values()) {
+            Parser parser = new Parser(new Lexer(program).getTokenBuffer(),
+                    new Compilation(mode, new IntermediateCode()));
+            String actual = "";
+            for (Diagnostic diagnostic : parser.validate())
+                actual += diagnostic.getKind() + " " + diagnostic.getMessage() + "\n";
+            assertEquals("Ошибка в режиме " + mode, expected, actual);
+        }
+        // Первая ошибка проверки совпадает с ошибкой разбора
+        try {
+            new Parser(new Lexer(program).getTokenBuffer()).parse();
+            Assert.fail("Ошибка в тесте проверки");
+        } catch (SemanticException ex) {
+            assertEquals("variable \"y\" not initialized: string 3, position 12", ex.getMessage());
+        }
+        assertEquals(0, new Parser(new Lexer("def main() {\n    print(1)\n}").getTokenBuffer()).validate().size());
+    }
+
+    @Test
+    public void scopeTest() throws Exception {
+        Parser parser = new Parser(new Lexer("def f(a b) {\n    x = a\n    b = x + 1\n    print(b)\n}\n"
+                + "def g() {\n    y = 2\n}").getTokens(), Parser.Mode.COMPILE);
+        List<Function> functions = parser.parse();
+        Scope scope = functions.get(0).getScope();
+        assertEquals(Arrays.asList("a", "b", "x"), scope.getNames());
+        assertEquals(2, scope.lookup("x"));
+        assertEquals(-1, scope.lookup("y"));
+        Expression print = functions.get(0).getStatements().get(2).getExpressions().iterator().next();
+        assertEquals(scope.lookup("b"), print.getSlot());
+        assertEquals(0, functions.get(1).getScope().lookup("y"));
+    }
+
+    @Test
+    public void typeCheckTest() throws Exception {
+        String program = "def f(b a) {\n    if (b > 1) {\n        print(a + \"!\")\n    }\n    return b * 2\n}\n"
+                + "def main() {\n    x = \"a\"\n    f(3 x)\n}\n"
+                + "def g(a b) {\n    x = -a\n    y = !b\n    while (!y) {\n        y = x < 0\n    }\n}";
+        List<Function> functions = new Parser(new Lexer(program).getTokens(), Parser.Mode.COMPILE).parse();
+        Scope scope = functions.get(0).getScope();
+        assertEquals(Expression.Type.INT, scope.getType(scope.lookup("b")));
+        assertEquals(Expression.Type.STRING, scope.getType(scope.lookup("a")));
+        assertEquals(Expression.Type.INT, functions.get(0).getReturnType());
+        Statement condition = functions.get(0).getStatements().get(0);
+        assertEquals(Expression.Type.BOOL, condition.getExpression().getType());
+        assertEquals(Expression.Type.INT, condition.getExpression().getLeft().getType());
+        // Одноместные операции над неизвестными при компиляции значениями
+        scope = functions.get(2).getScope();
+        assertEquals(Expression.Type.INT, scope.getType(scope.lookup("a")));
+        assertEquals(Expression.Type.BOOL, scope.getType(scope.lookup("b")));
+        assertEquals(Expression.Type.INT, functions.get(2).getStatements().get(0).getExpression().getType());
+        String[][] errors = {
+                { "def main() {\n    x = 1\n    x = \"a\"\n}",
+                        "waited type \"INT\" instead of \"STRING\" for variable \"x\" in function \"main\"" },
+                { "def main() {\n    print(true + false)\n}",
+                        "operation \"+\" not defined for type \"BOOL\" in function \"main\"" },
+                { "def main() {\n    print(1 + true)\n}",
+                        "waited type \"INT\" instead of \"BOOL\" for operation \"+\" in function \"main\"" },
+                { "def f(a b) {\n    print(-a)\n    print(!b)\n}\ndef main() {\n    f(1 2)\n}",
+                        "waited type \"BOOL\" instead of \"INT\" for argument \"b\" of function \"f\" in function \"main\"" },
+                { "def f(a) {\n    b = \"s\"\n    print(-b)\n}",
+                        "waited type \"INT\" instead of \"STRING\" for operation \"-\" in function \"f\"" },
+                { "def f(n) {\n    print(n - 1)\n}\ndef main() {\n    f(\"a\")\n}",
+                        "waited type \"INT\" instead of \"STRING\" for argument \"n\" of function \"f\" in function \"main\"" } };
+        for (String[] error : errors) {
+            try {
+                new Parser(new Lexer(error[0]).getTokens(), Parser.Mode.COMPILE).parse();
+                Assert.fail(error[0]);
+            } catch (SemanticException ex) {
+                assertEquals(error[1], ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import app.classes.Lexer;
+import app.classes.Parser;
+import app.classes.VirtualMachine;
+import app.classes.exceptions.ExecutionException;
+
+public class VirtualMachineTests {
+
+    private static final String program = "def countdown(n)\n{\n    if (n > 0)\n    {\n        print(n)\n"
+            + "        countdown(n - 1)\n    }\n}\n"
+            + "def sum(n)\n{\n    s = 0\n    i = 0\n    while (i < n)\n    {\n        i = i + 1\n"
+            + "        s = s + i\n    }\n    return s\n}\n"
+            + "def main()\n{\n    countdown(3)\n    x = \"cat\" + \"code\"\n    do\n    {\n        print(x)\n"
+            + "    } while (x != \"catcode\")\n    return 5 > 2 && !false\n}\n"
+            + "def divide(a b)\n{\n    return a / b\n}";
+
+    private VirtualMachine compile() throws Exception {
+        Parser parser = new Parser(new Lexer(program).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        return new VirtualMachine(parser.getIntermediateCode().getCode());
+    }
+
+    @Test
+    public void runTest() throws Exception {
+        VirtualMachine vm = compile();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        vm.setOut(new PrintStream(stream, true));
+        // Тест 1
+        Object actual = vm.run("main");
+        assertEquals("Ошибка в тесте 1", true, actual);
+        assertEquals("Ошибка в тесте 1", "3\n2\n1\ncatcode\n", stream.toString().replace("\r", ""));
+        // Тест 2
+        actual = vm.run("sum", 1000);
+        assertEquals("Ошибка в тесте 2", 500500, actual);
+        System.out.println("Тест 2: " + vm.getExecutedInstructions() + " инструкций, "
+                + (long) vm.getInstructionsPerSecond() + " инструкций/с");
+        // Тест 3
+        actual = vm.run("divide", 7, 2);
+        assertEquals("Ошибка в тесте 3", 3, actual);
+        // Тест 4
+        try {
+            vm.run("divide", 1, 0);
+            Assert.fail("Ошибка в тесте 4");
+        } catch (ExecutionException e) {
+            assertEquals("Ошибка в тесте 4", "/ by zero", e.getMessage());
+        }
+    }
+
+    @Test
+    public void forwardCallsTest() throws Exception {
+        // Функции вызываются до определения и вызывают друг друга
+        String forward = "def main()\n{\n    ping(3)\n}\n"
+                + "def ping(n)\n{\n    if (n > 0)\n    {\n        print(n)\n        pong(n - 1)\n    }\n}\n"
+                + "def pong(n)\n{\n    if (n > 0)\n    {\n        print(0 - n)\n        ping(n - 1)\n    }\n}";
+        Parser parser = new Parser(new Lexer(forward).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        VirtualMachine vm = new VirtualMachine(parser.getIntermediateCode().getCode());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        vm.setOut(new PrintStream(stream, true));
+        vm.run("main");
+        assertEquals("3\n-2\n1\n", stream.toString().replace("\r", ""));
+    }
+
+    @Test
+    public void argumentOrderTest() throws Exception {
+        // Аргументы связываются с параметрами по порядку объявления, а не по именам
+        String ordered = "def f(b a)\n{\n    print(b)\n    print(a)\n    return b - a\n}\n"
+                + "def main()\n{\n    f(10 3)\n}";
+        Parser parser = new Parser(new Lexer(ordered).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        VirtualMachine vm = new VirtualMachine(parser.getIntermediateCode().getCode());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        vm.setOut(new PrintStream(stream, true));
+        vm.run("main");
+        assertEquals("10\n3\n", stream.toString().replace("\r", ""));
+        assertEquals(7, vm.run("f", 10, 3));
+    }
+
+    @Test
+    public void freshFrameTest() throws Exception {
+        // Переменная, присвоенная не на всех путях, не наследует значение прошлого вызова
+        String program = "def f(n)\n{\n    if (n > 0)\n    {\n        v = n\n    }\n    print(v)\n}\n"
+                + "def main()\n{\n    f(1)\n    f(0)\n}";
+        Parser parser = new Parser(new Lexer(program).getTokens(), Parser.Mode.COMPILE);
+        parser.parse();
+        VirtualMachine vm = new VirtualMachine(parser.getIntermediateCode().getCode());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        vm.setOut(new PrintStream(stream, true));
+        vm.run("main");
+        vm.run("f", 2);
+        vm.run("f", 0);
+        assertEquals("1\nnull\n2\nnull\n", stream.toString().replace("\r", ""));
+    }
+}